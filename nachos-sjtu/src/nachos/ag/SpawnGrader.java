@@ -0,0 +1,85 @@
+package nachos.ag;
+
+import nachos.machine.Lib;
+import nachos.machine.Machine;
+import nachos.userprog.SpawnStats;
+import nachos.userprog.UserKernel;
+import nachos.userprog.UserProcess;
+
+/**
+ * Reports the cost of <tt>exec()</tt>, <tt>join()</tt> and <tt>exit()</tt>
+ * for the runs of <tt>spawn_bench.coff</tt>. The program brackets each run
+ * of children with <tt>benchBegin()</tt> and <tt>benchEnd()</tt>; at the end
+ * of a run the grader prints its simulated ticks and host time, and the
+ * average cost of every step the kernel timed, as kept by
+ * <tt>SpawnStats</tt>. Works with any of the user, VM and file system
+ * kernels.
+ */
+public class SpawnGrader extends CoffGrader {
+
+	private static final int ActionDone = 0;
+
+	private static final int ActionBenchBegin = 30;
+
+	private static final int ActionBenchEnd = 31;
+
+	private String runName = null;
+
+	private int runChildren;
+
+	private long runTicks, runNanos;
+
+	@Override
+	protected void init() {
+		super.init();
+
+		SpawnStats.setEnabled(true);
+	}
+
+	@Override
+	protected int handleTestSystemCall(int type, int a0, int a1, int a2) {
+		switch (type) {
+		case ActionBenchBegin:
+			beginRun(a0, a1 != 0, a2);
+			break;
+		case ActionBenchEnd:
+			endRun();
+			break;
+		case ActionDone:
+			// the children's output is not checked
+			embededConsole.outputMatched = true;
+			return super.handleTestSystemCall(type, a0, a1, a2);
+		default:
+			return super.handleTestSystemCall(type, a0, a1, a2);
+		}
+		return 0;
+	}
+
+	private void beginRun(int program, boolean parallel, int children) {
+		Lib.assertTrue(runName == null, "benchBegin() called twice");
+
+		UserProcess process = UserKernel.currentProcess();
+		String name = process.readVirtualMemoryString(program, 256);
+		Lib.assertTrue(name != null, "Invalid program name");
+
+		runName = name + (parallel ? " parallel" : " sequential");
+		runChildren = children;
+		SpawnStats.reset();
+		runTicks = Machine.timer().getTime();
+		runNanos = System.nanoTime();
+	}
+
+	private void endRun() {
+		Lib.assertTrue(runName != null, "benchEnd() without benchBegin()");
+
+		long ticks = Machine.timer().getTime() - runTicks;
+		long nanos = System.nanoTime() - runNanos;
+
+		System.out.println();
+		System.out.println(String.format("%s x%d: %d ticks, %.1f ms",
+				runName, runChildren, ticks, nanos / 1e6));
+		System.out.print(SpawnStats.statistics());
+
+		runName = null;
+	}
+}
@@ -0,0 +1,61 @@
+package nachos.ag;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+import nachos.machine.Machine;
+
+/**
+ * Reports how hard the host JVM works while a VM test runs, such as
+ * <tt>vm_recursion.coff</tt>: the TLB misses taken, the host time, and the
+ * garbage collections and the time spent in them. Run it with a small young
+ * generation (say <tt>-XX:+UseSerialGC -Xmn2m</tt>) so that garbage made on
+ * the TLB miss path shows up as collections. Takes the same arguments as
+ * <tt>VMGrader</tt>.
+ */
+public class TLBGrader extends VMGrader {
+
+	private static final int ActionDone = 0;
+
+	private long startCollections, startCollectionMillis, startNanos;
+
+	@Override
+	protected void init() {
+		super.init();
+
+		startCollections = collections();
+		startCollectionMillis = collectionMillis();
+		startNanos = System.nanoTime();
+	}
+
+	@Override
+	protected int handleTestSystemCall(int type, int a0, int a1, int a2) {
+		if (type == ActionDone)
+			report();
+		return super.handleTestSystemCall(type, a0, a1, a2);
+	}
+
+	private void report() {
+		long nanos = System.nanoTime() - startNanos;
+
+		System.out.println();
+		System.out.println(String.format("%d ticks, %d TLB misses, %.1f ms",
+				Machine.timer().getTime(), privilege.stats.numTLBMisses, nanos / 1e6));
+		System.out.println(String.format("%d collections in %d ms",
+				collections() - startCollections, collectionMillis() - startCollectionMillis));
+	}
+
+	private static long collections() {
+		long total = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+			total += Math.max(0, collector.getCollectionCount());
+		return total;
+	}
+
+	private static long collectionMillis() {
+		long total = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+			total += Math.max(0, collector.getCollectionTime());
+		return total;
+	}
+}
@@ -54,9 +54,9 @@ public class File extends OpenFile {
 	}
 
 	public int read(int pos, byte[] buffer, int offset, int length) {
-		acquireRead();
+		int hold = acquireRead();
 		if (pos >= length()) {
-			releaseRead();
+			releaseRead(hold);
 			return -1;
 		}
 		
@@ -72,22 +72,27 @@ public class File extends OpenFile {
 		for (int i = headSector + 1; i <= tailSector; ++i) {
 			Integer addr = inode.getSectorAddr(i);
 			if (addr == null) {
-				releaseRead();
+				releaseRead(hold);
 				return amount;
 			}
 			int len = Math.min(length - amount, Disk.SectorSize);
-			Machine.synchDisk().readSector(addr, data, 0);
-			System.arraycopy(data, 0, buffer, offset, len);
+			// whole sectors go straight into the caller's buffer
+			if (len == Disk.SectorSize)
+				Machine.synchDisk().readSector(addr, buffer, offset);
+			else {
+				Machine.synchDisk().readSector(addr, data, 0);
+				System.arraycopy(data, 0, buffer, offset, len);
+			}
 			amount += len;
 			offset += len;
 		}
 		
-		releaseRead();
+		releaseRead(hold);
 		return amount;
 	}
 
 	public int write(int pos, byte[] buffer, int offset, int length) {
-		acquireWrite();
+		int hold = acquireWrite();
 		if (pos + length >= length())
 			inode.setFileSize(pos + length);
 		
@@ -96,25 +101,34 @@ public class File extends OpenFile {
 		int tailSector = sectorFromPos(pos + length);
 		int amount = Math.min(Disk.SectorSize - headOffset, length);
 		byte[] data = new byte[Disk.SectorSize];
-		Machine.synchDisk().readSector(inode.getSectorAddr(headSector), data, 0);
-		System.arraycopy(buffer, offset, data, headOffset, amount);
-		Machine.synchDisk().writeSector(inode.getSectorAddr(headSector), data, 0);
+		if (amount == Disk.SectorSize)
+			Machine.synchDisk().writeSector(inode.getSectorAddr(headSector), buffer, offset);
+		else {
+			Machine.synchDisk().readSector(inode.getSectorAddr(headSector), data, 0);
+			System.arraycopy(buffer, offset, data, headOffset, amount);
+			Machine.synchDisk().writeSector(inode.getSectorAddr(headSector), data, 0);
+		}
 		offset += amount;
 		for (int i = headSector + 1; i <= tailSector; ++i) {
 			Integer addr = inode.getSectorAddr(i);
 			if (addr == null) {
-				releaseWrite();
+				releaseWrite(hold);
 				return amount;
 			}
 			int len = Math.min(length - amount, Disk.SectorSize);
-			Machine.synchDisk().readSector(addr, data, 0);
-			System.arraycopy(buffer, offset, data, 0, len);
-			Machine.synchDisk().writeSector(addr, data, 0);
+			// whole sectors are written straight from the caller's buffer
+			if (len == Disk.SectorSize)
+				Machine.synchDisk().writeSector(addr, buffer, offset);
+			else {
+				Machine.synchDisk().readSector(addr, data, 0);
+				System.arraycopy(buffer, offset, data, 0, len);
+				Machine.synchDisk().writeSector(addr, data, 0);
+			}
 			amount += len;
 			offset += len;
 		}
 		
-		releaseWrite();
+		releaseWrite(hold);
 		return amount;
 	}
 	
@@ -146,23 +160,68 @@ public class File extends OpenFile {
 		return write(pos, bytes, 0, bytes.length) == bytes.length;
 	}
 
-	protected void acquireRead() {
-		if (!inode.readWriteLock.readHeldByCurrentThread() && !inode.readWriteLock.writeHeldByCurrentThread())
-			inode.readWriteLock.acquireRead();
-	}
-
-	protected void releaseRead() {
-		if (inode.readWriteLock.readHeldByCurrentThread())
+	/** The lock was already held in a sufficient mode; nothing to undo. */
+	protected static final int holdNone = 0;
+	/** The lock was acquired and must be released. */
+	protected static final int holdAcquired = 1;
+	/** A read hold was upgraded and must be downgraded again. */
+	protected static final int holdUpgraded = 2;
+	/** A read hold was dropped for a write hold and must be restored. */
+	protected static final int holdReacquired = 3;
+
+	/**
+	 * Acquire the inode lock for reading unless the current thread already
+	 * holds it. Returns a token to pass to <tt>releaseRead()</tt>, so nested
+	 * holds only release what they acquired.
+	 */
+	protected int acquireRead() {
+		ReadWriteLock lock = inode.readWriteLock;
+		if (lock.readHeldByCurrentThread() || lock.writeHeldByCurrentThread())
+			return holdNone;
+		lock.acquireRead();
+		return holdAcquired;
+	}
+
+	protected void releaseRead(int hold) {
+		if (hold == holdAcquired)
 			inode.readWriteLock.releaseRead();
 	}
 
-	protected void acquireWrite() {
-		if (!inode.readWriteLock.readHeldByCurrentThread() && !inode.readWriteLock.writeHeldByCurrentThread())
-			inode.readWriteLock.acquireWrite();
-	}
-
-	protected void releaseWrite() {
-		if (inode.readWriteLock.writeHeldByCurrentThread())
-			inode.readWriteLock.releaseWrite();
+	/**
+	 * Acquire the inode lock for writing unless the current thread already
+	 * holds it for writing. A read hold is upgraded in place. Returns a token
+	 * to pass to <tt>releaseWrite()</tt>.
+	 */
+	protected int acquireWrite() {
+		ReadWriteLock lock = inode.readWriteLock;
+		if (lock.writeHeldByCurrentThread())
+			return holdNone;
+		if (!lock.readHeldByCurrentThread()) {
+			lock.acquireWrite();
+			return holdAcquired;
+		}
+		if (lock.upgrade())
+			return holdUpgraded;
+
+		// another reader is upgrading and waiting for us to leave
+		lock.releaseRead();
+		lock.acquireWrite();
+		return holdReacquired;
+	}
+
+	protected void releaseWrite(int hold) {
+		ReadWriteLock lock = inode.readWriteLock;
+		switch (hold) {
+		case holdAcquired:
+			lock.releaseWrite();
+			break;
+		case holdUpgraded:
+			lock.downgrade();
+			break;
+		case holdReacquired:
+			lock.releaseWrite();
+			lock.acquireRead();
+			break;
+		}
 	}
 }
@@ -22,6 +22,7 @@ public class FilesysKernel extends VMKernel {
 		boolean format = Config.getBoolean("FilesysKernel.format");
 		fileSystem = realFileSystem = new RealFileSystem();
 		realFileSystem.init(format);
+		swapArea = realFileSystem.openSwapArea();
 	}
 
 	public void selfTest() {
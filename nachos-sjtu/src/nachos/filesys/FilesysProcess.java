@@ -1,7 +1,6 @@
 package nachos.filesys;
 
 import nachos.machine.Lib;
-import nachos.machine.Machine;
 import nachos.machine.OpenFile;
 import nachos.machine.Processor;
 import nachos.userprog.UserKernel;
@@ -101,7 +100,14 @@ public class FilesysProcess extends VMProcess {
 	}
 
 	protected int handleClose(int fileDescriptor) {
-		return fileManager.close(fileDescriptor);
+		return super.handleClose(fileDescriptor);
+	}
+
+	protected Object mappingKey(OpenFile file) {
+		// links and separate opens of one file share an inode
+		if (file instanceof File)
+			return ((File) file).inode;
+		return super.mappingKey(file);
 	}
 
 	protected int handleUnlink(int name) {
@@ -112,6 +118,7 @@ public class FilesysProcess extends VMProcess {
 			return -1;
 		}
 
+		invalidateImage(fileName);
 		return fileSys().remove(fileName) ? 0 : -1;
 	}
 
@@ -171,17 +178,14 @@ public class FilesysProcess extends VMProcess {
 		return FilesysKernel.realFileSystem;
 	}
 
+	protected boolean isRingOperation(int syscall) {
+		return syscall == SYSCALL_STAT || super.isRingOperation(syscall);
+	}
+
 	public void handleException(int cause) {
-		if (cause == Processor.exceptionSyscall) {
-			Processor processor = Machine.processor();
-			int result = handleSyscall(processor.readRegister(Processor.regV0),
-					processor.readRegister(Processor.regA0), processor
-							.readRegister(Processor.regA1), processor
-							.readRegister(Processor.regA2), processor
-							.readRegister(Processor.regA3));
-			processor.writeRegister(Processor.regV0, result);
-			processor.advancePC();
-		} else super.handleException(cause);
+		if (cause == Processor.exceptionSyscall)
+			handleSyscallException();
+		else super.handleException(cause);
 	}
 	
 	public class FileDescriptorManager extends UserProcess.FileDescriptorManager {
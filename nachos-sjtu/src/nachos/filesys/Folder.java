@@ -72,7 +72,7 @@ public class Folder extends File {
 
 	/** save the content of the folder to the disk */
 	public void save() {
-		acquireWrite();
+		int hold = acquireWrite();
 		
 		size = 4;
 		for (FolderEntry folderEntry : entrySet.values())
@@ -92,7 +92,7 @@ public class Folder extends File {
 		inode.setFileSize(size);
 		inode.save();
 		
-		releaseWrite();
+		releaseWrite(hold);
 	}
 
 	private void string2Buffer(String name, byte[] buffer, int pos) {
@@ -102,7 +102,7 @@ public class Folder extends File {
 
 	/** load the content of the folder from the disk */
 	public void load() {
-		acquireRead();
+		int hold = acquireRead();
 		
 		int pos = 0;
 		byte[] buffer = new byte[length()];
@@ -119,7 +119,7 @@ public class Folder extends File {
 		}
 		
 		Lib.assertTrue(pos == length());
-		releaseRead();
+		releaseRead(hold);
 	}
 
 	private String bytes2String(byte[] buffer, int pos, int maxLength) {
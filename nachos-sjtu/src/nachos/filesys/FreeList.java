@@ -25,13 +25,24 @@ public class FreeList extends File {
 	private LinkedList<Integer> free_list = new LinkedList<Integer>();
 	
 	private HashSet<Integer> used = new HashSet<Integer>();
+	
+	/** the number of sectors at the end of the disk kept for swap */
+	private int reserved = 0;
+	
+	/** where the reservation is recorded, just past the bitmap */
+	private static final int reservedPos = Lib.divRoundUp(Disk.NumSectors, 32) * 4;
 
 	public FreeList(INode inode) {
 		super(inode);
 	}
 
-	public void init() {
-		for (int i = 2; i < Disk.NumSectors; ++i)
+	/**
+	 * make every sector free, except the two static ones and the last
+	 * <i>reserved</i>, which are kept out of the file system for good
+	 */
+	public void init(int reserved) {
+		this.reserved = reserved;
+		for (int i = 2; i < Disk.NumSectors - reserved; ++i)
 			free_list.add(i);
 		save();
 	}
@@ -48,6 +59,11 @@ public class FreeList extends File {
 
 	/** save the content of freelist to the disk */
 	public void save() {
+		// first, so that a sector the file grows into is not saved as free
+		byte[] buffer = new byte[4];
+		Disk.extInt(reserved, buffer, 0);
+		write(reservedPos, buffer, 0, 4);
+		
 		BitMap bitMap = new BitMap(Disk.NumSectors);
 		for (Integer k : free_list)
 			bitMap.mark(k);
@@ -62,6 +78,20 @@ public class FreeList extends File {
 		for (int i = 0; i < Disk.NumSectors; ++i)
 			if (bitMap.check(i))
 				free_list.add(i);
+		
+		// disks formatted before swap was reserved have no record
+		if (length() >= reservedPos + 4) {
+			byte[] buffer = new byte[4];
+			read(reservedPos, buffer, 0, 4);
+			reserved = Disk.intInt(buffer, 0);
+		}
+		for (Integer k : free_list)
+			Lib.assertTrue(k < Disk.NumSectors - reserved, "reserved sector " + k + " is free");
+	}
+	
+	/** the number of sectors at the end of the disk kept for swap */
+	public int getReserved() {
+		return reserved;
 	}
 	
 	public int size() {
@@ -1,22 +1,45 @@
 package nachos.filesys;
 
-import java.util.ArrayList;
+import java.util.HashSet;
 
 import nachos.machine.Lib;
 import nachos.machine.Machine;
 import nachos.threads.*;
 
+/**
+ * A lock that admits either many readers or a single writer.
+ *
+ * <p>
+ * Readers are tracked by a count plus a set of holding threads, so checking
+ * whether the current thread holds the lock is constant time no matter how
+ * many readers there are. Waiting readers are always admitted as a batch.
+ *
+ * <p>
+ * With writer preference (the default), new readers queue behind a waiting
+ * writer and a releasing writer hands the lock to the next writer first. With
+ * reader preference, readers are admitted whenever no writer holds the lock
+ * and a releasing writer lets all waiting readers in first.
+ *
+ * <p>
+ * A reader may upgrade to a writer, and a writer may downgrade to a reader,
+ * without letting another writer in between.
+ */
 public class ReadWriteLock {
 	public ReadWriteLock() {
+		this(true);
 	}
-	
+
+	public ReadWriteLock(boolean preferWriter) {
+		this.preferWriter = preferWriter;
+	}
+
 	public void acquireWrite() {
 		Lib.assertTrue(!readHeldByCurrentThread() && !writeHeldByCurrentThread());
-		
+
 		boolean intStatus = Machine.interrupt().disable();
 		KThread thread = KThread.currentThread();
-		
-		if (writeHolder != null || readHolder.size() > 0) {
+
+		if (writeHolder != null || readCount > 0 || upgrader != null) {
 			writeWaitQueue.waitForAccess(thread);
 			++writeWaiting;
 			KThread.sleep();
@@ -24,77 +47,165 @@ public class ReadWriteLock {
 			writeWaitQueue.acquire(thread);
 			writeHolder = thread;
 		}
-		
+
 		Lib.assertTrue(writeHolder == thread);
-		
+
 		Machine.interrupt().restore(intStatus);
 	}
-	
+
 	public void releaseWrite() {
 		Lib.assertTrue(writeHeldByCurrentThread());
-		
+
 		boolean intStatus = Machine.interrupt().disable();
-		
-		if ((writeHolder = writeWaitQueue.nextThread()) != null) {
-			--writeWaiting;
-			writeHolder.ready();
+
+		writeHolder = null;
+		if (preferWriter || readWaiting == 0) {
+			if (!wakeWriter())
+				wakeReaders();
 		} else {
-			KThread reader = null;
-			while ((reader = readWaitQueue.nextThread()) != null) {
-				reader.ready();
-				readHolder.add(reader);
-			}
+			wakeReaders();
 		}
-		
+
 		Machine.interrupt().restore(intStatus);
 	}
-	
+
 	public void acquireRead() {
 		Lib.assertTrue(!readHeldByCurrentThread() && !writeHeldByCurrentThread());
-		
+
 		boolean intStatus = Machine.interrupt().disable();
 		KThread thread = KThread.currentThread();
-		
-		if (writeHolder != null || writeWaiting > 0) {
+
+		if (writeHolder != null || upgrader != null
+				|| (preferWriter && writeWaiting > 0)) {
 			readWaitQueue.waitForAccess(thread);
+			++readWaiting;
 			KThread.sleep();
 		} else {
-			readWaitQueue.acquire(thread);
-			readHolder.add(thread);
+			if (readWaiting == 0)
+				readWaitQueue.acquire(thread);
+			grantRead(thread);
 		}
-		
-		Lib.assertTrue(readHolder.contains(thread));
-		
+
+		Lib.assertTrue(readHolders.contains(thread));
+
 		Machine.interrupt().restore(intStatus);
 	}
-	
+
 	public void releaseRead() {
 		Lib.assertTrue(readHeldByCurrentThread());
-		
+
 		boolean intStatus = Machine.interrupt().disable();
-		
-		readHolder.remove(KThread.currentThread());
-		if (readHolder.isEmpty()) {
-			if ((writeHolder = writeWaitQueue.nextThread()) != null) {
-				--writeWaiting;
-				writeHolder.ready();
-			}
+
+		readHolders.remove(KThread.currentThread());
+		--readCount;
+
+		if (upgrader != null && readCount == 1) {
+			// only the upgrading thread is left
+			readHolders.remove(upgrader);
+			readCount = 0;
+			writeHolder = upgrader;
+			upgrader = null;
+			writeHolder.ready();
+		} else if (readCount == 0) {
+			wakeWriter();
 		}
-		
+
 		Machine.interrupt().restore(intStatus);
 	}
-	
+
+	/**
+	 * Turn the read hold of the current thread into a write hold, waiting for
+	 * the other readers to leave. Writers that are already waiting do not get
+	 * in first. Only one reader can be upgrading at a time, as two would wait
+	 * for each other forever.
+	 *
+	 * @return <tt>true</tt> if the current thread now holds the write lock,
+	 *         <tt>false</tt> if another reader is already upgrading and the
+	 *         current thread still holds the read lock.
+	 */
+	public boolean upgrade() {
+		Lib.assertTrue(readHeldByCurrentThread());
+
+		boolean intStatus = Machine.interrupt().disable();
+		KThread thread = KThread.currentThread();
+
+		if (upgrader != null) {
+			Machine.interrupt().restore(intStatus);
+			return false;
+		}
+
+		if (readCount == 1) {
+			readHolders.remove(thread);
+			readCount = 0;
+			writeHolder = thread;
+		} else {
+			upgrader = thread;
+			KThread.sleep();
+		}
+
+		Lib.assertTrue(writeHolder == thread);
+
+		Machine.interrupt().restore(intStatus);
+		return true;
+	}
+
+	/**
+	 * Turn the write hold of the current thread into a read hold. Waiting
+	 * readers are let in along with it unless a writer is waiting and writers
+	 * are preferred.
+	 */
+	public void downgrade() {
+		Lib.assertTrue(writeHeldByCurrentThread());
+
+		boolean intStatus = Machine.interrupt().disable();
+
+		writeHolder = null;
+		grantRead(KThread.currentThread());
+		if (!preferWriter || writeWaiting == 0)
+			wakeReaders();
+
+		Machine.interrupt().restore(intStatus);
+	}
+
 	public boolean writeHeldByCurrentThread() {
 		return writeHolder == KThread.currentThread();
 	}
-	
+
 	public boolean readHeldByCurrentThread() {
-		return readHolder.contains(KThread.currentThread());
+		return readCount > 0 && readHolders.contains(KThread.currentThread());
+	}
+
+	private void grantRead(KThread thread) {
+		readHolders.add(thread);
+		++readCount;
+	}
+
+	private boolean wakeWriter() {
+		if ((writeHolder = writeWaitQueue.nextThread()) == null)
+			return false;
+		--writeWaiting;
+		writeHolder.ready();
+		return true;
+	}
+
+	private void wakeReaders() {
+		KThread reader = null;
+		while ((reader = readWaitQueue.nextThread()) != null) {
+			--readWaiting;
+			grantRead(reader);
+			reader.ready();
+		}
 	}
 
-	private ArrayList<KThread> readHolder = new ArrayList<KThread>();
+	private HashSet<KThread> readHolders = new HashSet<KThread>();
+	private int readCount = 0;
 	private KThread writeHolder = null;
-	private ThreadQueue readWaitQueue = ThreadedKernel.scheduler.newThreadQueue(true);
+	private KThread upgrader = null;
+	private boolean preferWriter;
+	// readers wait for a writer, not for the reader that last took the queue,
+	// so they donate nothing
+	private ThreadQueue readWaitQueue = ThreadedKernel.scheduler.newThreadQueue(false);
 	private ThreadQueue writeWaitQueue = ThreadedKernel.scheduler.newThreadQueue(true);
+	int readWaiting = 0;
 	int writeWaiting = 0;
 }
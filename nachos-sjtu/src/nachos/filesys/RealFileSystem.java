@@ -3,10 +3,13 @@ package nachos.filesys;
 import java.util.Hashtable;
 import java.util.LinkedList;
 
+import nachos.machine.Config;
+import nachos.machine.Disk;
 import nachos.machine.FileSystem;
 import nachos.machine.Lib;
 import nachos.machine.Machine;
 import nachos.machine.OpenFile;
+import nachos.machine.Processor;
 import nachos.vm.VMKernel;
 
 /**
@@ -38,6 +41,13 @@ public class RealFileSystem implements FileSystem {
 	
 	private static Hashtable<Integer, INode> inodeTable = new Hashtable<Integer, INode>();
 	
+	/**
+	 * the number of sectors at the end of the disk reserved for swap at
+	 * format time, a whole number of pages. The free list records it, so a
+	 * disk mounted later keeps the reservation it was formatted with.
+	 */
+	private int swapSectors;
+
 	public static INode getInode(int addr) {
 		INode inode = inodeTable.get(addr);
 		if (inode == null) {
@@ -60,11 +70,17 @@ public class RealFileSystem implements FileSystem {
 	 *            whether to format the file system
 	 */
 	public void init(boolean format) {
+		int sectorsPerPage = Processor.pageSize / Disk.SectorSize;
+		int configured = Config.getInteger("RealFileSystem.swapSectors", 0);
+		swapSectors = configured / sectorsPerPage * sectorsPerPage;
+		Lib.assertTrue(!format || configured == 0 || swapSectors > 0,
+				"RealFileSystem.swapSectors must be 0 or at least a page of sectors");
+		
 		if (format) {
 			INode inode_free_list = new INode(FreeList.STATIC_ADDR);
 			inodeTable.put(FreeList.STATIC_ADDR, inode_free_list);
 			free_list = new FreeList(inode_free_list);
-			free_list.init();
+			free_list.init(swapSectors);
 			
 			INode inode_root_folder = new INode(Folder.STATIC_ADDR);
 			inodeTable.put(Folder.STATIC_ADDR, inode_root_folder);
@@ -83,6 +99,10 @@ public class RealFileSystem implements FileSystem {
 			inodeTable.put(FreeList.STATIC_ADDR, inode_free_list);
 			free_list = new FreeList(inode_free_list);
 			free_list.load();
+			if (free_list.getReserved() != swapSectors)
+				Lib.debug(FilesysKernel.DEBUG_FLAG, "using the " + free_list.getReserved()
+						+ " swap sectors reserved at format time");
+			swapSectors = free_list.getReserved();
 
 			INode inode_root_folder = new INode(Folder.STATIC_ADDR);
 			inode_root_folder.load();
@@ -397,10 +417,28 @@ public class RealFileSystem implements FileSystem {
 	}
 
 	public int getSwapFileSectors() {
-		INode inode = ((File) VMKernel.getSwapManager().getSwapFile()).inode;
+		// the raw swap area is never part of the free list, only a file it
+		// overflows into
+		OpenFile swapFile = VMKernel.getSwapManager().getSwapFile();
+		if (swapFile == null)
+			return 0;
+		INode inode = ((File) swapFile).inode;
 		return inode.file_size;
 	}
 
+	/**
+	 * open the swap area reserved when the disk was formatted
+	 * 
+	 * @return the area, or null if RealFileSystem.swapSectors is 0 and swap
+	 *         should go to a file. Swap that outgrows the area goes to a
+	 *         file as well.
+	 */
+	public OpenFile openSwapArea() {
+		if (swapSectors == 0)
+			return null;
+		return new SwapArea(Disk.NumSectors - swapSectors, swapSectors);
+	}
+
 	public int getFreeSize() {
 		return free_list.size();
 	}
@@ -0,0 +1,56 @@
+package nachos.filesys;
+
+import nachos.machine.Disk;
+import nachos.machine.Lib;
+import nachos.machine.Machine;
+import nachos.machine.OpenFile;
+
+/**
+ * SwapArea is a run of disk sectors set aside for swap when the disk is
+ * formatted. It is read and written like a file, but positions map straight
+ * to sectors: there is no inode, and every transfer must cover whole
+ * sectors.
+ */
+public class SwapArea extends OpenFile {
+	public SwapArea(int firstSector, int numSectors) {
+		super(null, "swap area");
+		this.firstSector = firstSector;
+		this.numSectors = numSectors;
+	}
+
+	public int length() {
+		return numSectors * Disk.SectorSize;
+	}
+
+	public int read(int pos, byte[] buffer, int offset, int length) {
+		if (!inRange(pos, length))
+			return -1;
+
+		int sector = firstSector + pos / Disk.SectorSize;
+		for (int done = 0; done < length; done += Disk.SectorSize)
+			Machine.synchDisk().readSector(sector++, buffer, offset + done);
+		return length;
+	}
+
+	public int write(int pos, byte[] buffer, int offset, int length) {
+		if (!inRange(pos, length))
+			return -1;
+
+		int sector = firstSector + pos / Disk.SectorSize;
+		for (int done = 0; done < length; done += Disk.SectorSize)
+			Machine.synchDisk().writeSector(sector++, buffer, offset + done);
+		return length;
+	}
+
+	private boolean inRange(int pos, int length) {
+		Lib.assertTrue(pos % Disk.SectorSize == 0 && length % Disk.SectorSize == 0,
+				"swap area transfers must be whole sectors");
+		return pos >= 0 && length >= 0 && pos + length <= length();
+	}
+
+	/** the first sector of the area */
+	private int firstSector;
+
+	/** the number of sectors in the area */
+	private int numSectors;
+}
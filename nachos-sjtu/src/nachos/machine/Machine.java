@@ -341,6 +341,16 @@ public final class Machine {
 		return autoGrader;
 	}
 
+	/**
+	 * Return the runtime statistics. The kernel adds its own counters, such
+	 * as those of its frame allocator and swap space, to these.
+	 *
+	 * @return the runtime statistics.
+	 */
+	public static Stats stats() {
+		return stats;
+	}
+
 	public static String[] stubFileList() {
 		return testDirectory.list();
 	}
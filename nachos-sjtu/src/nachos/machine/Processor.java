@@ -191,6 +191,33 @@ public final class Processor {
 		return tlbSize;
 	}
 
+	/**
+	 * Return the current address space identifier, set by the last call to
+	 * setASID().
+	 * 
+	 * @return the current address space identifier.
+	 */
+	public int getASID() {
+		Lib.assertTrue(usingTLB);
+
+		return asid;
+	}
+
+	/**
+	 * Set the current address space identifier. Only TLB entries whose
+	 * <tt>asid</tt> field matches it take part in address translation, so the
+	 * entries of other address spaces need not be invalidated on a context
+	 * switch.
+	 * 
+	 * @param asid
+	 *            the address space identifier to use.
+	 */
+	public void setASID(int asid) {
+		Lib.assertTrue(usingTLB);
+
+		this.asid = asid;
+	}
+
 	/**
 	 * Returns the specified TLB entry.
 	 * 
@@ -224,6 +251,136 @@ public final class Processor {
 		translations[number] = new TranslationEntry(entry);
 	}
 
+	/**
+	 * Fill the specified TLB entry in place. Unlike
+	 * <tt>writeTLBEntry(int, TranslationEntry)</tt>, this allocates nothing.
+	 * 
+	 * @param number
+	 *            the index into the TLB.
+	 * @param asid
+	 *            the address space identifier of the new entry.
+	 * @param vpn
+	 *            the virtual page number of the new entry.
+	 * @param ppn
+	 *            the physical page number of the new entry.
+	 * @param flags
+	 *            the <tt>tlbZZZ</tt> flags of the new entry.
+	 */
+	public void writeTLBEntry(int number, int asid, int vpn, int ppn, int flags) {
+		Lib.assertTrue(usingTLB);
+		Lib.assertTrue(number >= 0 && number < tlbSize);
+
+		TranslationEntry entry = translations[number];
+		entry.asid = asid;
+		entry.vpn = vpn;
+		entry.ppn = ppn;
+		setFlags(entry, flags);
+	}
+
+	/**
+	 * Find the valid TLB entry that maps <i>vpn</i> in address space
+	 * <i>asid</i>.
+	 * 
+	 * @param asid
+	 *            the address space identifier to match.
+	 * @param vpn
+	 *            the virtual page number to match.
+	 * @return the index of the entry, or -1 if there is none.
+	 */
+	public int probeTLB(int asid, int vpn) {
+		Lib.assertTrue(usingTLB);
+
+		for (int i = 0; i < tlbSize; i++) {
+			if (translations[i].valid && translations[i].vpn == vpn
+					&& translations[i].asid == asid)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Return the virtual page number of the specified TLB entry.
+	 * 
+	 * @param number
+	 *            the index into the TLB.
+	 * @return the virtual page number.
+	 */
+	public int readTLBVPN(int number) {
+		Lib.assertTrue(usingTLB);
+		Lib.assertTrue(number >= 0 && number < tlbSize);
+
+		return translations[number].vpn;
+	}
+
+	/**
+	 * Return the physical page number of the specified TLB entry.
+	 * 
+	 * @param number
+	 *            the index into the TLB.
+	 * @return the physical page number.
+	 */
+	public int readTLBPPN(int number) {
+		Lib.assertTrue(usingTLB);
+		Lib.assertTrue(number >= 0 && number < tlbSize);
+
+		return translations[number].ppn;
+	}
+
+	/**
+	 * Return the address space identifier of the specified TLB entry.
+	 * 
+	 * @param number
+	 *            the index into the TLB.
+	 * @return the address space identifier.
+	 */
+	public int readTLBASID(int number) {
+		Lib.assertTrue(usingTLB);
+		Lib.assertTrue(number >= 0 && number < tlbSize);
+
+		return translations[number].asid;
+	}
+
+	/**
+	 * Return the flags of the specified TLB entry, as a combination of
+	 * <tt>tlbValid</tt>, <tt>tlbReadOnly</tt>, <tt>tlbUsed</tt> and
+	 * <tt>tlbDirty</tt>.
+	 * 
+	 * @param number
+	 *            the index into the TLB.
+	 * @return the flags of the entry.
+	 */
+	public int readTLBFlags(int number) {
+		Lib.assertTrue(usingTLB);
+		Lib.assertTrue(number >= 0 && number < tlbSize);
+
+		TranslationEntry entry = translations[number];
+		return (entry.valid ? tlbValid : 0) | (entry.readOnly ? tlbReadOnly : 0)
+				| (entry.used ? tlbUsed : 0) | (entry.dirty ? tlbDirty : 0);
+	}
+
+	/**
+	 * Set the flags of the specified TLB entry in place, leaving its page
+	 * numbers and address space identifier as they are.
+	 * 
+	 * @param number
+	 *            the index into the TLB.
+	 * @param flags
+	 *            the new flags of the entry.
+	 */
+	public void setTLBFlags(int number, int flags) {
+		Lib.assertTrue(usingTLB);
+		Lib.assertTrue(number >= 0 && number < tlbSize);
+
+		setFlags(translations[number], flags);
+	}
+
+	private static void setFlags(TranslationEntry entry, int flags) {
+		entry.valid = (flags & tlbValid) != 0;
+		entry.readOnly = (flags & tlbReadOnly) != 0;
+		entry.used = (flags & tlbUsed) != 0;
+		entry.dirty = (flags & tlbDirty) != 0;
+	}
+
 	/**
 	 * Return the number of pages of physical memory attached to this simulated
 	 * processor.
@@ -333,15 +490,12 @@ public final class Processor {
 
 			entry = translations[vpn];
 		}
-		// else, look through all TLB entries for matching vpn
+		// else, look through all TLB entries for matching vpn and asid
 		else {
-			for (int i = 0; i < tlbSize; i++) {
-				if (translations[i].valid && translations[i].vpn == vpn) {
-					entry = translations[i];
-					break;
-				}
-			}
-			if (entry == null) {
+			int index = probeTLB(asid, vpn);
+			if (index != -1)
+				entry = translations[index];
+			else {
 				privilege.stats.numTLBMisses++;
 				Lib.debug(dbgProcessor, "\t\tTLB miss");
 				throw new MipsException(exceptionTLBMiss, vaddr);
@@ -482,6 +636,15 @@ public final class Processor {
 		registers[regNextPC] = nextPC;
 	}
 
+	/** TLB entry flag: the entry takes part in translation. */
+	public static final int tlbValid = 0x1;
+	/** TLB entry flag: the page may not be written. */
+	public static final int tlbReadOnly = 0x2;
+	/** TLB entry flag: the page has been read or written. */
+	public static final int tlbUsed = 0x4;
+	/** TLB entry flag: the page has been written. */
+	public static final int tlbDirty = 0x8;
+
 	/** Caused by a syscall instruction. */
 	public static final int exceptionSyscall = 0;
 	/** Caused by an access to an invalid virtual page. */
@@ -555,6 +718,8 @@ public final class Processor {
 	private boolean usingTLB;
 	/** Number of TLB entries. */
 	private int tlbSize = 4;
+	/** The address space identifier that TLB entries must match. */
+	private int asid = 0;
 	/**
 	 * Either an associative or direct-mapped set of translation entries,
 	 * depending on whether there is a TLB.
@@ -8,6 +8,15 @@ import java.io.IOException;
 
 /**
  * A text-based console that uses System.in and System.out.
+ * 
+ * <p>
+ * The console has a transmit and a receive FIFO, whose sizes are set by
+ * <tt>StandardConsole.transmitFifo</tt> and
+ * <tt>StandardConsole.receiveFifo</tt>. With the default size of one, a single
+ * byte moves per interrupt. With larger FIFOs, a send interrupt transmits
+ * every byte queued since the last one, and a receive interrupt delivers every
+ * byte that has arrived, up to the size of the FIFO; a burst of output is
+ * written to System.out at once and flushed at the end of the interrupt.
  */
 public class StandardConsole implements SerialConsole {
 	/**
@@ -21,6 +30,12 @@ public class StandardConsole implements SerialConsole {
 
 		this.privilege = privilege;
 
+		transmitFifo = new byte[Config.getInteger("StandardConsole.transmitFifo", 1)];
+		receiveFifo = new int[Config.getInteger("StandardConsole.receiveFifo", 1)];
+		Lib.assertTrue(transmitFifo.length > 0 && receiveFifo.length > 0);
+		if (transmitFifo.length > 1)
+			hostBuffer = new byte[transmitFifo.length];
+
 		receiveInterrupt = new Runnable() {
 			public void run() {
 				receiveInterrupt();
@@ -89,13 +104,23 @@ public class StandardConsole implements SerialConsole {
 	}
 
 	private void receiveInterrupt() {
-		Lib.assertTrue(incomingKey == -1);
+		Lib.assertTrue(receiveCount == 0);
+
+		for (int i = 0; i < receiveFifo.length; i++) {
+			int c = in();
+			if (c == -1)
+				break;
 
-		incomingKey = translateCharacter(in());
-		if (incomingKey == -1) {
+			int key = translateCharacter(c);
+			if (key != -1)
+				receiveFifo[receiveCount++] = key;
+		}
+
+		if (receiveCount == 0) {
 			scheduleReceiveInterrupt();
 		} else {
-			privilege.stats.numConsoleReads++;
+			receiveHead = 0;
+			privilege.stats.numConsoleReads += receiveCount;
 
 			if (receiveInterruptHandler != null)
 				receiveInterruptHandler.run();
@@ -103,12 +128,12 @@ public class StandardConsole implements SerialConsole {
 	}
 
 	public final int readByte() {
-		int key = incomingKey;
+		if (receiveCount == 0)
+			return -1;
 
-		if (incomingKey != -1) {
-			incomingKey = -1;
+		int key = receiveFifo[receiveHead++];
+		if (--receiveCount == 0)
 			scheduleReceiveInterrupt();
-		}
 
 		return key;
 	}
@@ -125,27 +150,65 @@ public class StandardConsole implements SerialConsole {
 	 *            the byte to write.
 	 */
 	protected void out(int value) {
+		if (hostBuffer != null) {
+			hostBuffer[hostCount++] = (byte) value;
+			return;
+		}
+
 		System.out.write(value);
 		System.out.flush();
 	}
 
 	private void sendInterrupt() {
-		Lib.assertTrue(outgoingKey != -1);
+		Lib.assertTrue(transmitCount > 0);
 
-		out(outgoingKey);
-		outgoingKey = -1;
+		for (int i = 0; i < transmitCount; i++)
+			out(transmitFifo[i] & 0xFF);
+		privilege.stats.numConsoleWrites += transmitCount;
+		transmitCount = 0;
 
-		privilege.stats.numConsoleWrites++;
+		if (hostCount > 0) {
+			System.out.write(hostBuffer, 0, hostCount);
+			System.out.flush();
+			hostCount = 0;
+		}
 
 		if (sendInterruptHandler != null)
 			sendInterruptHandler.run();
 	}
 
 	public final void writeByte(int value) {
-		if (outgoingKey == -1)
+		if (transmitCount == 0)
 			scheduleSendInterrupt();
+		else if (transmitCount == transmitFifo.length)
+			transmitCount--;
 
-		outgoingKey = value & 0xFF;
+		transmitFifo[transmitCount++] = (byte) value;
+	}
+
+	/**
+	 * Queue as many bytes as fit in the transmit FIFO. They are all sent by
+	 * the next send interrupt.
+	 * 
+	 * @param buf
+	 *            the buffer holding the bytes.
+	 * @param offset
+	 *            the offset of the first byte in <i>buf</i>.
+	 * @param length
+	 *            the number of bytes to send.
+	 * @return the number of bytes queued.
+	 */
+	public final int writeBytes(byte[] buf, int offset, int length) {
+		int amount = Math.min(length, transmitFifo.length - transmitCount);
+		if (amount <= 0)
+			return 0;
+
+		if (transmitCount == 0)
+			scheduleSendInterrupt();
+
+		System.arraycopy(buf, offset, transmitFifo, transmitCount, amount);
+		transmitCount += amount;
+		return amount;
 	}
 
 	private Privilege privilege = null;
@@ -156,8 +219,14 @@ public class StandardConsole implements SerialConsole {
 	private Runnable receiveInterruptHandler = null;
 	private Runnable sendInterruptHandler = null;
 
-	private int incomingKey = -1;
-	private int outgoingKey = -1;
+	private int[] receiveFifo;
+	private int receiveHead = 0, receiveCount = 0;
+	private byte[] transmitFifo;
+	private int transmitCount = 0;
+
+	// a burst of output, written to System.out in one call
+	private byte[] hostBuffer = null;
+	private int hostCount = 0;
 
 	private boolean prevCarriageReturn = false;
 }
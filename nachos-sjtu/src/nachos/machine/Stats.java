@@ -24,6 +24,17 @@ public final class Stats {
 				+ ", writes " + numConsoleWrites);
 		System.out.println("Paging: page faults " + numPageFaults
 				+ ", TLB misses " + numTLBMisses);
+		if (numFrameAllocations > 0)
+			System.out.println("Frames: free " + numFreeFrames
+					+ ", fewest free " + minFreeFrames + ", allocated "
+					+ numFrameAllocations + ", failures "
+					+ numFrameAllocationFailures);
+		if (numSwapFrames > 0)
+			System.out.println("Swap: frames used " + numSwapFramesUsed
+					+ " of " + numSwapFrames + ", most used "
+					+ maxSwapFramesUsed + ", reads " + numSwapPagesRead
+					+ " pages in " + numSwapReads + ", writes "
+					+ numSwapPagesWritten + " pages in " + numSwapWrites);
 		System.out.println("Network I/O: received " + numPacketsReceived
 				+ ", sent " + numPacketsSent);
 	}
@@ -53,6 +64,28 @@ public final class Stats {
 	public int numPageFaults = 0;
 	/** The total number of TLB misses that have occurred. */
 	public int numTLBMisses = 0;
+	/** The number of physical page frames the kernel currently has free. */
+	public int numFreeFrames = 0;
+	/** The fewest physical page frames the kernel has had free at once. */
+	public int minFreeFrames = 0;
+	/** The total number of physical page frames the kernel has allocated. */
+	public int numFrameAllocations = 0;
+	/** The total number of frame allocations the kernel could not satisfy. */
+	public int numFrameAllocationFailures = 0;
+	/** The number of page frames in the kernel's swap space. */
+	public int numSwapFrames = 0;
+	/** The number of swap frames currently holding a page. */
+	public int numSwapFramesUsed = 0;
+	/** The most swap frames that have held a page at once. */
+	public int maxSwapFramesUsed = 0;
+	/** The total number of pages the kernel has read from swap. */
+	public int numSwapPagesRead = 0;
+	/** The total number of transfers in which those pages were read. */
+	public int numSwapReads = 0;
+	/** The total number of pages the kernel has written to swap. */
+	public int numSwapPagesWritten = 0;
+	/** The total number of transfers in which those pages were written. */
+	public int numSwapWrites = 0;
 	/** The total number of packets Nachos has sent to the network. */
 	public int numPacketsSent = 0;
 	/** The total number of packets Nachos has received from the network. */
@@ -53,6 +53,7 @@ public final class TranslationEntry {
 		readOnly = entry.readOnly;
 		used = entry.used;
 		dirty = entry.dirty;
+		asid = entry.asid;
 	}
 
 	/** The virtual page number. */
@@ -83,4 +84,11 @@ public final class TranslationEntry {
 	 * user program.
 	 */
 	public boolean dirty;
+
+	/**
+	 * The address space this entry belongs to. A TLB entry only matches while
+	 * the processor's current address space identifier is the same; ignored
+	 * in page tables.
+	 */
+	public int asid;
 }
@@ -1,5 +1,7 @@
 package nachos.network;
 
+import java.util.Collection;
+
 import nachos.machine.*;
 import nachos.threads.*;
 
@@ -14,6 +16,11 @@ import nachos.threads.*;
  * from the network and to place them in the appropriate queues. This cannot be
  * done in the receive interrupt handler because each queue (implemented with a
  * <tt>SynchList</tt>) is protected by a lock.
+ * 
+ * <p>
+ * Each queue holds at most <tt>PostOffice.queueCapacity</tt> messages. Mail
+ * that arrives for a full queue is dropped, just as the network itself may
+ * drop it, so a port nobody reads from cannot hold up delivery to the others.
  */
 @SuppressWarnings("unchecked")
 public class PostOffice {
@@ -27,9 +34,11 @@ public class PostOffice {
 		messageSent = new Semaphore(0);
 		sendLock = new Lock();
 
+		int queueCapacity = Config.getInteger("PostOffice.queueCapacity", 64);
+
 		queues = new SynchList[MailMessage.portLimit];
 		for (int i = 0; i < queues.length; i++)
-			queues[i] = new SynchList();
+			queues[i] = new SynchList<MailMessage>(queueCapacity);
 
 		Runnable receiveHandler = new Runnable() {
 			public void run() {
@@ -65,7 +74,7 @@ public class PostOffice {
 
 		Lib.debug(dbgNet, "waiting for mail on port " + port);
 
-		MailMessage mail = (MailMessage) queues[port].removeFirst();
+		MailMessage mail = queues[port].removeFirst();
 
 		if (Lib.test(dbgNet))
 			System.out.println("got mail on port " + port + ": " + mail);
@@ -73,6 +82,59 @@ public class PostOffice {
 		return mail;
 	}
 
+	/**
+	 * Retrieve a message on the specified port, waiting at most <i>ticks</i>
+	 * clock ticks for one to arrive.
+	 * 
+	 * @param port
+	 *            the port on which to wait for a message.
+	 * @param ticks
+	 *            the minimum number of clock ticks to wait.
+	 * 
+	 * @return the message received, or <tt>null</tt> if none arrived in time.
+	 */
+	public MailMessage receive(int port, long ticks) {
+		Lib.assertTrue(port >= 0 && port < queues.length);
+
+		Lib.debug(dbgNet, "waiting for mail on port " + port + " for " + ticks
+				+ " ticks");
+
+		MailMessage mail = queues[port].removeFirst(ticks);
+
+		if (Lib.test(dbgNet))
+			System.out.println("got mail on port " + port + ": " + mail);
+
+		return mail;
+	}
+
+	/**
+	 * Retrieve up to <i>max</i> messages on the specified port, waiting until
+	 * at least one has arrived. The messages already queued behind the first
+	 * are taken under a single acquisition of the queue lock.
+	 * 
+	 * @param port
+	 *            the port on which to wait for messages.
+	 * @param mail
+	 *            the collection to add the messages to, in arrival order.
+	 * @param max
+	 *            the maximum number of messages to retrieve. Must be positive.
+	 * 
+	 * @return the number of messages received.
+	 */
+	public int receive(int port, Collection<MailMessage> mail, int max) {
+		Lib.assertTrue(port >= 0 && port < queues.length);
+		Lib.assertTrue(max > 0);
+
+		Lib.debug(dbgNet, "waiting for mail on port " + port);
+
+		mail.add(queues[port].removeFirst());
+		int n = 1 + queues[port].drainTo(mail, max - 1);
+
+		Lib.debug(dbgNet, "got " + n + " messages on port " + port);
+
+		return n;
+	}
+
 	/**
 	 * Wait for incoming messages, and then put them in the correct mailbox.
 	 */
@@ -95,7 +157,9 @@ public class PostOffice {
 						+ ": " + mail);
 
 			// atomically add message to the mailbox and wake a waiting thread
-			queues[mail.dstPort].add(mail);
+			if (!queues[mail.dstPort].offer(mail))
+				Lib.debug(dbgNet, "mailbox full, dropping mail to port "
+						+ mail.dstPort);
 		}
 	}
 
@@ -131,7 +195,7 @@ public class PostOffice {
 		messageSent.V();
 	}
 
-	private SynchList[] queues;
+	private SynchList<MailMessage>[] queues;
 	private Semaphore messageReceived; // V'd when a message can be dequeued
 	private Semaphore messageSent; // V'd when a message can be queued
 	private Lock sendLock;
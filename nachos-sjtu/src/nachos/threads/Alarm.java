@@ -1,5 +1,6 @@
 package nachos.threads;
 
+import java.util.Iterator;
 import java.util.PriorityQueue;
 
 import nachos.machine.*;
@@ -64,6 +65,44 @@ public class Alarm {
 		
 		Machine.interrupt().restore(intStatus);
 	}
+
+	/**
+	 * Arrange for the specified thread to be placed in the ready set during
+	 * the first timer interrupt at or after <i>wakeTime</i>. Does not put the
+	 * thread to sleep; the caller must do that itself. Interrupts must be
+	 * disabled.
+	 * 
+	 * @param thread
+	 *            the thread to wake.
+	 * @param wakeTime
+	 *            the absolute time at which to wake it.
+	 */
+	void schedule(KThread thread, long wakeTime) {
+		Lib.assertTrue(Machine.interrupt().disabled());
+
+		waitQueue.add(new Waiter(thread, wakeTime));
+	}
+
+	/**
+	 * Withdraw a wakeup arranged with <tt>schedule()</tt>. Interrupts must be
+	 * disabled.
+	 * 
+	 * @param thread
+	 *            the thread whose wakeup to withdraw.
+	 * @return <tt>true</tt> if the wakeup was withdrawn, <tt>false</tt> if the
+	 *         timer has already placed the thread in the ready set.
+	 */
+	boolean cancel(KThread thread) {
+		Lib.assertTrue(Machine.interrupt().disabled());
+
+		for (Iterator<Waiter> i = waitQueue.iterator(); i.hasNext();) {
+			if (i.next().thread == thread) {
+				i.remove();
+				return true;
+			}
+		}
+		return false;
+	}
 	
 	private class Waiter implements Comparable<Waiter> {
 		private KThread thread;
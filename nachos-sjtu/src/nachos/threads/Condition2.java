@@ -1,5 +1,6 @@
 package nachos.threads;
 
+import java.util.HashSet;
 import java.util.LinkedList;
 
 import nachos.machine.*;
@@ -46,6 +47,42 @@ public class Condition2 {
 		Machine.interrupt().restore(intStatus);
 	}
 
+	/**
+	 * Like <tt>sleep()</tt>, but give up waiting once at least <i>ticks</i>
+	 * clock ticks have passed without a <tt>wake()</tt>. The thread still
+	 * reacquires the associated lock before returning.
+	 * 
+	 * @param ticks
+	 *            the minimum number of clock ticks to wait.
+	 * @return <tt>true</tt> if the thread was woken by <tt>wake()</tt> or
+	 *         <tt>wakeAll()</tt>, <tt>false</tt> if it timed out.
+	 */
+	public boolean sleepFor(long ticks) {
+		Lib.assertTrue(conditionLock.isHeldByCurrentThread());
+
+		long wakeTime = Machine.timer().getTime() + ticks;
+
+		boolean intStatus = Machine.interrupt().disable();
+		KThread thread = KThread.currentThread();
+
+		waitQueue.add(thread);
+		timedWaiters.add(thread);
+		ThreadedKernel.alarm.schedule(thread, wakeTime);
+
+		conditionLock.release();
+		KThread.sleep();
+
+		// wake() takes the thread off the wait queue; a timeout leaves it there
+		timedWaiters.remove(thread);
+		boolean woken = !waitQueue.remove(thread);
+
+		conditionLock.acquire();
+
+		Machine.interrupt().restore(intStatus);
+
+		return woken;
+	}
+
 	/**
 	 * Wake up at most one thread sleeping on this condition variable. The
 	 * current thread must hold the associated lock.
@@ -55,7 +92,11 @@ public class Condition2 {
 		
 		if (!waitQueue.isEmpty()) {
 			boolean intStatus = Machine.interrupt().disable();
-			waitQueue.removeFirst().ready();
+			KThread thread = waitQueue.removeFirst();
+			// a timed waiter the timer already readied only needs to be told
+			if (!timedWaiters.remove(thread)
+					|| ThreadedKernel.alarm.cancel(thread))
+				thread.ready();
 			Machine.interrupt().restore(intStatus);
 		}
 	}
@@ -73,4 +114,5 @@ public class Condition2 {
 	private Lock conditionLock;
 	
 	private LinkedList<KThread> waitQueue = new LinkedList<KThread>();
+	private HashSet<KThread> timedWaiters = new HashSet<KThread>();
 }
@@ -0,0 +1,119 @@
+package nachos.threads;
+
+/**
+ * A histogram of non-negative samples with logarithmically sized buckets.
+ * Bucket <tt>0</tt> counts samples equal to zero, and bucket <i>i</i> counts
+ * samples in the range [2<sup>i-1</sup>, 2<sup>i</sup>). Samples too large
+ * for the last bucket are counted in it.
+ *
+ * <p>
+ * All state is kept in primitive fields, so recording a sample never
+ * allocates.
+ */
+public class Histogram {
+	/**
+	 * Allocate a new, empty histogram.
+	 *
+	 * @param scope
+	 *            what the samples were collected over (e.g. a thread name).
+	 * @param metric
+	 *            what the samples measure.
+	 */
+	public Histogram(String scope, String metric) {
+		this.scope = scope.replace(',', ' ');
+		this.metric = metric;
+	}
+
+	/**
+	 * Record a sample. Negative samples are counted as zero.
+	 *
+	 * @param value
+	 *            the sample to record.
+	 */
+	public void add(long value) {
+		if (value < 0)
+			value = 0;
+
+		int bucket = 64 - Long.numberOfLeadingZeros(value);
+		if (bucket >= numBuckets)
+			bucket = numBuckets - 1;
+
+		buckets[bucket]++;
+		count++;
+		total += value;
+		if (value > max)
+			max = value;
+	}
+
+	/**
+	 * Return the number of samples recorded.
+	 *
+	 * @return the number of samples recorded.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Return the sum of all samples recorded.
+	 *
+	 * @return the sum of all samples recorded.
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * Return the largest sample recorded.
+	 *
+	 * @return the largest sample recorded, or <tt>0</tt> if there are none.
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * Return the number of samples recorded in the specified bucket.
+	 *
+	 * @param bucket
+	 *            the bucket index.
+	 * @return the number of samples in that bucket.
+	 */
+	public long getBucket(int bucket) {
+		return buckets[bucket];
+	}
+
+	/**
+	 * Return the header line matching the rows produced by <tt>toCSV()</tt>.
+	 *
+	 * @return a CSV header line, without a trailing newline.
+	 */
+	public static String csvHeader() {
+		StringBuffer res = new StringBuffer("scope,metric,count,total,max");
+		res.append(",0");
+		for (int i = 1; i < numBuckets; i++)
+			res.append("," + (1L << (i - 1)));
+		return res.toString();
+	}
+
+	/**
+	 * Format this histogram as a single CSV row.
+	 *
+	 * @return a CSV row, without a trailing newline.
+	 */
+	public String toCSV() {
+		StringBuffer res = new StringBuffer();
+		res.append(scope).append(',').append(metric).append(',').append(count)
+				.append(',').append(total).append(',').append(max);
+		for (int i = 0; i < numBuckets; i++)
+			res.append(',').append(buckets[i]);
+		return res.toString();
+	}
+
+	/** The number of buckets in every histogram. */
+	public static final int numBuckets = 32;
+
+	private String scope, metric;
+	private long count = 0, total = 0, max = 0;
+	private long[] buckets = new long[numBuckets];
+}
@@ -1,5 +1,7 @@
 package nachos.threads;
 
+import java.util.LinkedList;
+
 import nachos.machine.*;
 
 /**
@@ -279,8 +281,11 @@ public class KThread {
 		Lib.assertTrue(status != statusReady);
 
 		status = statusReady;
-		if (this != idleThread)
+		if (this != idleThread) {
 			readyQueue.waitForAccess(this);
+			numReady++;
+		}
+		readyTime = Machine.timer().getTime();
 
 		Machine.autoGrader().readyThread(this);
 	}
@@ -338,6 +343,10 @@ public class KThread {
 		KThread nextThread = readyQueue.nextThread();
 		if (nextThread == null)
 			nextThread = idleThread;
+		else if (collectStats)
+			queueDepth.add(numReady--);
+		else
+			numReady--;
 
 		nextThread.run();
 	}
@@ -367,6 +376,9 @@ public class KThread {
 
 		Machine.yield();
 
+		if (collectStats)
+			recordSwitch(currentThread, this);
+
 		currentThread.saveState();
 
 		Lib.debug(dbgThread, "Switching from: " + currentThread.toString()
@@ -410,6 +422,85 @@ public class KThread {
 		Lib.assertTrue(this == currentThread);
 	}
 
+	/**
+	 * Record the time slice just used by <i>from</i> and the time <i>to</i>
+	 * spent on the ready queue. The idle thread is never accounted.
+	 */
+	private static void recordSwitch(KThread from, KThread to) {
+		long now = Machine.timer().getTime();
+
+		if (from != idleThread) {
+			from.threadStats().timeSlice.add(now - from.dispatchTime);
+			timeSlice.add(now - from.dispatchTime);
+		}
+
+		if (to != idleThread) {
+			to.threadStats().readyLatency.add(now - to.readyTime);
+			readyLatency.add(now - to.readyTime);
+		}
+
+		to.dispatchTime = now;
+	}
+
+	private ThreadStats threadStats() {
+		if (stats == null) {
+			stats = new ThreadStats(toString());
+			allThreadStats.add(stats);
+		}
+		return stats;
+	}
+
+	/**
+	 * Write the scheduling histograms collected so far as CSV. There is one
+	 * row for each of the global ready-to-run latency, time slice and run
+	 * queue depth histograms, followed by the latency and time slice rows of
+	 * every thread that has run. Times are in simulated ticks.
+	 * 
+	 * <p>
+	 * Does nothing unless <tt>KThread.schedulingStats</tt> is enabled. The rows
+	 * are written to the file named by <tt>KThread.schedulingStatsFile</tt> on
+	 * the stub file system, or printed if no file is configured.
+	 */
+	public static void exportSchedulingStats() {
+		if (!collectStats)
+			return;
+
+		StringBuffer csv = new StringBuffer();
+		csv.append(Histogram.csvHeader()).append('\n');
+		csv.append(readyLatency.toCSV()).append('\n');
+		csv.append(timeSlice.toCSV()).append('\n');
+		csv.append(queueDepth.toCSV()).append('\n');
+		for (ThreadStats s : allThreadStats) {
+			csv.append(s.readyLatency.toCSV()).append('\n');
+			csv.append(s.timeSlice.toCSV()).append('\n');
+		}
+
+		String fileName = Config.getString("KThread.schedulingStatsFile", null);
+		FileSystem fileSystem = Machine.stubFileSystem();
+		if (fileName == null || fileSystem == null) {
+			System.out.print(csv);
+			return;
+		}
+
+		OpenFile file = fileSystem.open(fileName, true);
+		if (file == null) {
+			Lib.debug(dbgThread, "cannot create " + fileName);
+			return;
+		}
+		byte[] data = csv.toString().getBytes();
+		file.write(0, data, 0, data.length);
+		file.close();
+	}
+
+	private static class ThreadStats {
+		ThreadStats(String name) {
+			readyLatency = new Histogram(name, "readyLatency");
+			timeSlice = new Histogram(name, "timeSlice");
+		}
+
+		Histogram readyLatency, timeSlice;
+	}
+
 	private static class PingTest implements Runnable {
 		PingTest(int which) {
 			this.which = which;
@@ -473,6 +564,24 @@ public class KThread {
 	private static KThread currentThread = null;
 	private static KThread toBeDestroyed = null;
 	private static KThread idleThread = null;
+
+	/** The number of threads on the ready queue, not counting the idle thread. */
+	private static int numReady = 0;
+
+	/** Time this thread last entered the ready queue. */
+	private long readyTime = 0;
+	/** Time this thread was last given the CPU. */
+	private long dispatchTime = 0;
+	private ThreadStats stats = null;
+
+	private static final boolean collectStats = Config.getBoolean(
+			"KThread.schedulingStats", false);
+	private static Histogram readyLatency = new Histogram("global",
+			"readyLatency");
+	private static Histogram timeSlice = new Histogram("global", "timeSlice");
+	private static Histogram queueDepth = new Histogram("global",
+			"runQueueDepth");
+	private static LinkedList<ThreadStats> allThreadStats = new LinkedList<ThreadStats>();
 	
 	ThreadQueue joinQueue = ThreadedKernel.scheduler.newThreadQueue(true);
 }
@@ -1,25 +1,44 @@
 package nachos.threads;
 
+import java.util.Collection;
 import java.util.LinkedList;
 
 import nachos.machine.Lib;
+import nachos.machine.Machine;
 
 /**
- * A synchronized queue.
+ * A synchronized queue, optionally bounded. When the queue is full,
+ * <tt>add()</tt> blocks until a consumer makes room.
  */
 public class SynchList<T> {
 	/**
-	 * Allocate a new synchronized queue.
+	 * Allocate a new unbounded synchronized queue.
 	 */
 	public SynchList() {
+		this(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Allocate a new synchronized queue that holds at most <i>capacity</i>
+	 * objects.
+	 * 
+	 * @param capacity
+	 *            the maximum number of objects in the queue. Must be positive.
+	 */
+	public SynchList(int capacity) {
+		Lib.assertTrue(capacity > 0);
+
+		this.capacity = capacity;
 		list = new LinkedList<T>();
 		lock = new Lock();
-		listEmpty = new Condition(lock);
+		listEmpty = new Condition2(lock);
+		listFull = new Condition2(lock);
 	}
 
 	/**
-	 * Add the specified object to the end of the queue. If another thread is
-	 * waiting in <tt>removeFirst()</tt>, it is woken up.
+	 * Add the specified object to the end of the queue, blocking until there
+	 * is room if necessary. If another thread is waiting in
+	 * <tt>removeFirst()</tt>, it is woken up.
 	 * 
 	 * @param o
 	 *            the object to add. Must not be <tt>null</tt>.
@@ -28,11 +47,36 @@ public class SynchList<T> {
 		Lib.assertTrue(o != null);
 
 		lock.acquire();
+		while (list.size() >= capacity)
+			listFull.sleep();
 		list.add(o);
 		listEmpty.wake();
 		lock.release();
 	}
 
+	/**
+	 * Add the specified object to the end of the queue if there is room,
+	 * without blocking.
+	 * 
+	 * @param o
+	 *            the object to add. Must not be <tt>null</tt>.
+	 * @return <tt>true</tt> if the object was added, <tt>false</tt> if the
+	 *         queue was full.
+	 */
+	public boolean offer(T o) {
+		Lib.assertTrue(o != null);
+
+		lock.acquire();
+		boolean added = list.size() < capacity;
+		if (added) {
+			list.add(o);
+			listEmpty.wake();
+		}
+		lock.release();
+
+		return added;
+	}
+
 	/**
 	 * Remove an object from the front of the queue, blocking until the queue is
 	 * non-empty if necessary.
@@ -46,11 +90,78 @@ public class SynchList<T> {
 		while (list.isEmpty())
 			listEmpty.sleep();
 		o = list.removeFirst();
+		listFull.wake();
+		lock.release();
+
+		return o;
+	}
+
+	/**
+	 * Remove an object from the front of the queue, waiting at most
+	 * <i>ticks</i> clock ticks for the queue to become non-empty.
+	 * 
+	 * @param ticks
+	 *            the minimum number of clock ticks to wait.
+	 * @return the element removed from the front of the queue, or
+	 *         <tt>null</tt> if the queue stayed empty.
+	 */
+	public T removeFirst(long ticks) {
+		T o = null;
+		long deadline = Machine.timer().getTime() + ticks;
+
+		lock.acquire();
+		while (list.isEmpty()) {
+			long left = deadline - Machine.timer().getTime();
+			if (left <= 0 || !listEmpty.sleepFor(left) && list.isEmpty())
+				break;
+		}
+		if (!list.isEmpty()) {
+			o = list.removeFirst();
+			listFull.wake();
+		}
 		lock.release();
 
 		return o;
 	}
 
+	/**
+	 * Move up to <i>max</i> objects from the front of the queue to the end of
+	 * the specified collection, in order, under a single acquisition of the
+	 * queue lock. Does not block.
+	 * 
+	 * @param c
+	 *            the collection to add the objects to.
+	 * @param max
+	 *            the maximum number of objects to move.
+	 * @return the number of objects moved.
+	 */
+	public int drainTo(Collection<? super T> c, int max) {
+		int n = 0;
+
+		lock.acquire();
+		while (n < max && !list.isEmpty()) {
+			c.add(list.removeFirst());
+			listFull.wake();
+			n++;
+		}
+		lock.release();
+
+		return n;
+	}
+
+	/**
+	 * Return the number of objects currently in the queue.
+	 * 
+	 * @return the number of objects in the queue.
+	 */
+	public int size() {
+		lock.acquire();
+		int size = list.size();
+		lock.release();
+
+		return size;
+	}
+
 	private static class PingTest implements Runnable {
 		PingTest(SynchList<Integer> ping, SynchList<Integer> pong) {
 			this.ping = ping;
@@ -80,9 +191,36 @@ public class SynchList<T> {
 			ping.add(o);
 			Lib.assertTrue(pong.removeFirst() == o);
 		}
+
+		final SynchList<Integer> bounded = new SynchList<Integer>(2);
+
+		new KThread(new Runnable() {
+			public void run() {
+				for (int i = 0; i < 10; i++)
+					bounded.add(new Integer(i));
+			}
+		}).setName("producer").fork();
+
+		LinkedList<Integer> drained = new LinkedList<Integer>();
+		while (drained.size() < 10) {
+			Lib.assertTrue(bounded.size() <= 2);
+			if (bounded.drainTo(drained, 10) == 0)
+				drained.add(bounded.removeFirst());
+		}
+		for (int i = 0; i < 10; i++)
+			Lib.assertTrue(drained.get(i).intValue() == i);
+
+		Lib.assertTrue(bounded.offer(new Integer(0)));
+		Lib.assertTrue(bounded.offer(new Integer(1)));
+		Lib.assertTrue(!bounded.offer(new Integer(2)));
+		Lib.assertTrue(bounded.removeFirst(100).intValue() == 0);
+		Lib.assertTrue(bounded.removeFirst(100).intValue() == 1);
+		Lib.assertTrue(bounded.removeFirst(100) == null);
 	}
 
+	private int capacity;
 	private LinkedList<T> list;
 	private Lock lock;
-	private Condition listEmpty;
+	private Condition2 listEmpty;
+	private Condition2 listFull;
 }
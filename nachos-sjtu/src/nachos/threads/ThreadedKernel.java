@@ -59,9 +59,12 @@ public class ThreadedKernel extends Kernel {
 	}
 
 	/**
-	 * Terminate this kernel. Never returns.
+	 * Terminate this kernel. Exports the scheduling statistics collected by
+	 * <tt>KThread</tt>, if enabled. Never returns.
 	 */
 	public void terminate() {
+		KThread.exportSchedulingStats();
+
 		Machine.halt();
 	}
 
@@ -0,0 +1,149 @@
+package nachos.userprog;
+
+import java.util.Hashtable;
+
+import nachos.machine.*;
+import nachos.threads.*;
+
+/**
+ * Asynchronous reads and writes for a user process. Each request gets a
+ * handle at once and is carried out by a worker thread of the process,
+ * straight into or out of the user buffer, while the process keeps running.
+ * The process polls or waits on the handle for the result, which frees it.
+ */
+public class AsyncIO {
+	/**
+	 * Allocate a new asynchronous I/O manager for a process. The worker thread
+	 * is started with the first request.
+	 *
+	 * @param process
+	 *            the process making the requests.
+	 */
+	public AsyncIO(final UserProcess process) {
+		worker = new Worker<Request>(process, lock, "aio worker " + process.PID) {
+			protected void run(Request request) {
+				int result = process.handleSyscall(request.syscall, request.fd,
+						request.buffer, request.size, 0);
+
+				lock.acquire();
+				request.result = result;
+				request.done = true;
+				finished.wakeAll();
+				lock.release();
+			}
+		};
+	}
+
+	/**
+	 * Queue a read or write.
+	 *
+	 * @param syscall
+	 *            <tt>syscallRead</tt> or <tt>syscallWrite</tt>.
+	 * @param fd
+	 *            the file descriptor.
+	 * @param buffer
+	 *            the user buffer.
+	 * @param size
+	 *            the number of bytes to transfer.
+	 * @return the handle of the request, or -1 if too many are outstanding.
+	 */
+	public int submit(int syscall, int fd, int buffer, int size) {
+		lock.acquire();
+		if (worker.isClosing() || requests.size() >= maxRequests) {
+			lock.release();
+			return -1;
+		}
+
+		worker.start();
+
+		while (requests.containsKey(nextHandle))
+			nextHandle = (nextHandle + 1) & Integer.MAX_VALUE;
+		Request request = new Request(nextHandle, syscall, fd, buffer, size);
+		nextHandle = (nextHandle + 1) & Integer.MAX_VALUE;
+
+		requests.put(request.handle, request);
+		worker.add(request);
+		lock.release();
+
+		return request.handle;
+	}
+
+	/**
+	 * Check whether a request has finished. If it has, its result is returned
+	 * through <i>result</i> and the handle is freed.
+	 *
+	 * @param handle
+	 *            the handle of the request.
+	 * @param result
+	 *            receives the result of a finished request.
+	 * @return <tt>1</tt> if the request has finished, <tt>0</tt> if it is
+	 *         still running, or <tt>-1</tt> if there is no such request.
+	 */
+	public int poll(int handle, int[] result) {
+		lock.acquire();
+		Request request = requests.get(handle);
+		int status = request == null ? -1 : request.done ? 1 : 0;
+		if (status == 1) {
+			requests.remove(handle);
+			result[0] = request.result;
+		}
+		lock.release();
+
+		return status;
+	}
+
+	/**
+	 * Wait for a request to finish and free its handle.
+	 *
+	 * @param handle
+	 *            the handle of the request.
+	 * @return the result of the request, or -1 if there is no such request.
+	 */
+	public int waitFor(int handle) {
+		lock.acquire();
+		Request request = requests.get(handle);
+		if (request == null) {
+			lock.release();
+			return -1;
+		}
+
+		while (!request.done)
+			finished.sleep();
+		requests.remove(handle);
+		lock.release();
+
+		return request.result;
+	}
+
+	/**
+	 * Stop the worker once the request it is running is done. Queued requests
+	 * are dropped.
+	 */
+	public void close() {
+		worker.close();
+	}
+
+	private static class Request {
+		Request(int handle, int syscall, int fd, int buffer, int size) {
+			this.handle = handle;
+			this.syscall = syscall;
+			this.fd = fd;
+			this.buffer = buffer;
+			this.size = size;
+		}
+
+		int handle, syscall, fd, buffer, size;
+		int result;
+		boolean done = false;
+	}
+
+	/** The largest number of requests a process can have outstanding. */
+	public static final int maxRequests = 16;
+
+	private Worker<Request> worker;
+	private int nextHandle = 0;
+
+	private Hashtable<Integer, Request> requests = new Hashtable<Integer, Request>();
+	private Lock lock = new Lock();
+	private Condition2 finished = new Condition2(lock);
+}
@@ -0,0 +1,203 @@
+package nachos.userprog;
+
+import nachos.machine.*;
+
+/**
+ * An allocator for physical page frames, backed by a two-level bitmap. Each
+ * bit of <tt>freeMap</tt> is set when its frame is free, and each bit of
+ * <tt>summary</tt> is set when the corresponding word of <tt>freeMap</tt> has
+ * a free frame in it. Finding a free frame therefore looks at one summary
+ * word per 4096 frames and then at a single map word, which is constant time
+ * for any memory size Nachos supports.
+ *
+ * <p>
+ * The allocator does no locking of its own; callers must serialize access.
+ * Its counters are kept in the machine's <tt>Stats</tt>, which prints them
+ * when Nachos halts.
+ */
+public class FrameAllocator {
+	/**
+	 * Allocate a new frame allocator with every frame free.
+	 *
+	 * @param numFrames
+	 *            the number of physical page frames.
+	 */
+	public FrameAllocator(int numFrames) {
+		Lib.assertTrue(numFrames > 0);
+
+		this.numFrames = numFrames;
+		freeMap = new long[(numFrames + 63) / 64];
+		summary = new long[(freeMap.length + 63) / 64];
+
+		for (int i = 0; i < numFrames; i++)
+			freeMap[i >> 6] |= 1L << i;
+		for (int w = 0; w < freeMap.length; w++)
+			summary[w >> 6] |= 1L << w;
+
+		numFree = numFrames;
+		stats.numFreeFrames = numFree;
+		stats.minFreeFrames = numFree;
+	}
+
+	/**
+	 * Allocate a single frame.
+	 *
+	 * @return the frame number, or <tt>-1</tt> if no frame is free.
+	 */
+	public int allocate() {
+		for (int s = 0; s < summary.length; s++) {
+			if (summary[s] == 0)
+				continue;
+
+			int w = (s << 6) + Long.numberOfTrailingZeros(summary[s]);
+			int ppn = (w << 6) + Long.numberOfTrailingZeros(freeMap[w]);
+			take(ppn);
+			stats.numFrameAllocations++;
+			return ppn;
+		}
+
+		stats.numFrameAllocationFailures++;
+		return -1;
+	}
+
+	/**
+	 * Allocate <i>n</i> frames, not necessarily contiguous. Either all of them
+	 * are allocated or none are.
+	 *
+	 * @param n
+	 *            the number of frames to allocate.
+	 * @return the frame numbers, or <tt>null</tt> if fewer than <i>n</i>
+	 *         frames are free.
+	 */
+	public int[] allocate(int n) {
+		Lib.assertTrue(n >= 0);
+
+		if (n > numFree) {
+			stats.numFrameAllocationFailures++;
+			return null;
+		}
+
+		int[] frames = new int[n];
+		int count = 0;
+		for (int w = 0; count < n; w++) {
+			// take whole words at a time while they last
+			long bits = freeMap[w];
+			while (bits != 0 && count < n) {
+				int ppn = (w << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				take(ppn);
+				frames[count++] = ppn;
+			}
+		}
+
+		stats.numFrameAllocations += n;
+		return frames;
+	}
+
+	/**
+	 * Allocate <i>n</i> physically contiguous frames, using the lowest run
+	 * that fits.
+	 *
+	 * @param n
+	 *            the number of frames to allocate. Must be positive.
+	 * @return the first frame of the run, or <tt>-1</tt> if there is no free
+	 *         run that long.
+	 */
+	public int allocateContiguous(int n) {
+		Lib.assertTrue(n > 0);
+
+		int run = 0;
+		for (int ppn = 0; ppn < numFrames && n <= numFree; ppn++) {
+			long word = freeMap[ppn >> 6];
+			if (word == 0 && (ppn & 63) == 0) {
+				// skip a fully allocated word
+				run = 0;
+				ppn += 63;
+			} else if ((word & (1L << ppn)) == 0) {
+				run = 0;
+			} else if (++run == n) {
+				int first = ppn - n + 1;
+				for (int i = first; i <= ppn; i++)
+					take(i);
+				stats.numFrameAllocations += n;
+				return first;
+			}
+		}
+
+		stats.numFrameAllocationFailures++;
+		return -1;
+	}
+
+	/**
+	 * Return a frame to the free pool.
+	 *
+	 * @param ppn
+	 *            the frame to free. Must be allocated.
+	 */
+	public void free(int ppn) {
+		Lib.assertTrue(!isFree(ppn));
+
+		int w = ppn >> 6;
+		freeMap[w] |= 1L << ppn;
+		summary[w >> 6] |= 1L << w;
+		stats.numFreeFrames = ++numFree;
+	}
+
+	/**
+	 * Return several frames to the free pool.
+	 *
+	 * @param frames
+	 *            the frames to free. Each must be allocated.
+	 */
+	public void free(int[] frames) {
+		for (int ppn : frames)
+			free(ppn);
+	}
+
+	/**
+	 * Test whether a frame is free.
+	 *
+	 * @param ppn
+	 *            the frame number.
+	 * @return <tt>true</tt> if the frame is free.
+	 */
+	public boolean isFree(int ppn) {
+		Lib.assertTrue(ppn >= 0 && ppn < numFrames);
+
+		return (freeMap[ppn >> 6] & (1L << ppn)) != 0;
+	}
+
+	/**
+	 * Return the number of free frames.
+	 *
+	 * @return the number of free frames.
+	 */
+	public int getNumFree() {
+		return numFree;
+	}
+
+	/**
+	 * Return the total number of frames managed by this allocator.
+	 *
+	 * @return the number of frames.
+	 */
+	public int getNumFrames() {
+		return numFrames;
+	}
+
+	private void take(int ppn) {
+		int w = ppn >> 6;
+		freeMap[w] &= ~(1L << ppn);
+		if (freeMap[w] == 0)
+			summary[w >> 6] &= ~(1L << w);
+		stats.numFreeFrames = --numFree;
+		if (numFree < stats.minFreeFrames)
+			stats.minFreeFrames = numFree;
+	}
+
+	private int numFrames;
+	private long[] freeMap;
+	private long[] summary;
+	private int numFree;
+	private Stats stats = Machine.stats();
+}
@@ -0,0 +1,179 @@
+package nachos.userprog;
+
+import nachos.machine.*;
+import nachos.threads.*;
+
+/**
+ * A one-way channel between processes, backed by a fixed-size ring buffer in
+ * the kernel. Reads block until data is available or every write end is
+ * closed; writes block until all their data fits or every read end is
+ * closed. Closing an end also ends a read or write blocked on it, as when
+ * its process exits.
+ */
+public class Pipe {
+	/**
+	 * Allocate a new, empty pipe with no open ends.
+	 */
+	public Pipe() {
+	}
+
+	/**
+	 * Return a new read end of this pipe.
+	 *
+	 * @return an <tt>OpenFile</tt> that reads from this pipe.
+	 */
+	public OpenFile openForReading() {
+		lock.acquire();
+		readers++;
+		lock.release();
+
+		return new End(true);
+	}
+
+	/**
+	 * Return a new write end of this pipe.
+	 *
+	 * @return an <tt>OpenFile</tt> that writes to this pipe.
+	 */
+	public OpenFile openForWriting() {
+		lock.acquire();
+		writers++;
+		lock.release();
+
+		return new End(false);
+	}
+
+	/**
+	 * Return a new end of the same pipe and direction as <i>file</i>, if it is
+	 * a pipe end, as when a process passes its pipes to a child.
+	 *
+	 * @param file
+	 *            an open file.
+	 * @return the new end, or <tt>null</tt> if <i>file</i> is not a pipe end.
+	 */
+	public static OpenFile duplicate(OpenFile file) {
+		if (!(file instanceof End) || ((End) file).closed)
+			return null;
+
+		End end = (End) file;
+		return end.reading ? end.pipe().openForReading() : end
+				.pipe().openForWriting();
+	}
+
+	/**
+	 * Return whether <i>file</i> is an end of some pipe.
+	 *
+	 * @param file
+	 *            an open file, or <tt>null</tt>.
+	 * @return <tt>true</tt> if <i>file</i> is a pipe end.
+	 */
+	public static boolean isEnd(OpenFile file) {
+		return file instanceof End;
+	}
+
+	private int read(End end, byte[] buf, int offset, int length) {
+		lock.acquire();
+		while (count == 0 && writers > 0 && !end.closed)
+			dataAvailable.sleep();
+		if (end.closed) {
+			lock.release();
+			return -1;
+		}
+
+		int amount = Math.min(length, count);
+		for (int i = 0; i < amount; i++) {
+			buf[offset + i] = buffer[head];
+			head = (head + 1) % capacity;
+		}
+		count -= amount;
+		if (amount > 0)
+			spaceAvailable.wakeAll();
+		lock.release();
+
+		return amount;
+	}
+
+	private int write(End end, byte[] buf, int offset, int length) {
+		int amount = 0;
+
+		lock.acquire();
+		while (amount < length && readers > 0 && !end.closed) {
+			while (count == capacity && readers > 0 && !end.closed)
+				spaceAvailable.sleep();
+			if (end.closed)
+				break;
+
+			int chunk = Math.min(length - amount, capacity - count);
+			for (int i = 0; i < chunk; i++) {
+				buffer[(head + count) % capacity] = buf[offset + amount];
+				count++;
+				amount++;
+			}
+			dataAvailable.wakeAll();
+		}
+		lock.release();
+
+		// writing to a pipe nobody can read is an error
+		return amount == 0 && length > 0 ? -1 : amount;
+	}
+
+	private void close(boolean reading) {
+		lock.acquire();
+		if (reading)
+			readers--;
+		else
+			writers--;
+		// wake the other side if this was its last peer, and anything
+		// blocked on the end just closed
+		dataAvailable.wakeAll();
+		spaceAvailable.wakeAll();
+		lock.release();
+	}
+
+	private class End extends OpenFile {
+		End(boolean reading) {
+			super(null, "pipe");
+
+			this.reading = reading;
+		}
+
+		public int read(byte[] buf, int offset, int length) {
+			if (!reading || closed)
+				return -1;
+
+			return Pipe.this.read(this, buf, offset, length);
+		}
+
+		public int write(byte[] buf, int offset, int length) {
+			if (reading || closed)
+				return -1;
+
+			return Pipe.this.write(this, buf, offset, length);
+		}
+
+		public void close() {
+			if (!closed) {
+				closed = true;
+				Pipe.this.close(reading);
+			}
+		}
+
+		Pipe pipe() {
+			return Pipe.this;
+		}
+
+		private boolean reading;
+		private boolean closed = false;
+	}
+
+	/** The number of bytes a pipe can hold. */
+	public static final int capacity = 4096;
+
+	private byte[] buffer = new byte[capacity];
+	private int head = 0, count = 0;
+	private int readers = 0, writers = 0;
+
+	private Lock lock = new Lock();
+	private Condition2 dataAvailable = new Condition2(lock);
+	private Condition2 spaceAvailable = new Condition2(lock);
+}
@@ -0,0 +1,149 @@
+package nachos.userprog;
+
+import nachos.machine.*;
+
+/**
+ * The cost of creating and destroying processes, in simulated ticks and in
+ * host time. The kernel times each <tt>exec()</tt>, <tt>join()</tt> and
+ * <tt>exit()</tt>, and the steps inside them: parsing the COFF headers,
+ * <tt>loadSections()</tt>, allocating physical pages and tearing down the
+ * address space.
+ *
+ * <p>
+ * Nothing is timed unless <tt>UserProcess.spawnStats</tt> is set or
+ * <tt>setEnabled()</tt> is called, as by a benchmark grader.
+ */
+public class SpawnStats {
+	private SpawnStats() {
+	}
+
+	/**
+	 * Turn timing on or off.
+	 *
+	 * @param enabled
+	 *            <tt>true</tt> to time spawn and teardown.
+	 */
+	public static void setEnabled(boolean enabled) {
+		SpawnStats.enabled = enabled;
+	}
+
+	/**
+	 * Start timing a step.
+	 *
+	 * @return the start of the step, to be passed to <tt>end()</tt>, or
+	 *         <tt>null</tt> if timing is off.
+	 */
+	public static Mark begin() {
+		if (!enabled)
+			return null;
+
+		return new Mark();
+	}
+
+	/**
+	 * Finish timing a step.
+	 *
+	 * @param phase
+	 *            the kind of step, one of the phase constants.
+	 * @param mark
+	 *            the value returned by <tt>begin()</tt>.
+	 */
+	public static void end(int phase, Mark mark) {
+		if (mark == null)
+			return;
+
+		counts[phase]++;
+		ticks[phase] += Machine.timer().getTime() - mark.ticks;
+		nanos[phase] += System.nanoTime() - mark.nanos;
+	}
+
+	/**
+	 * Forget all the steps timed so far.
+	 */
+	public static void reset() {
+		for (int i = 0; i < numPhases; i++)
+			counts[i] = ticks[i] = nanos[i] = 0;
+	}
+
+	/**
+	 * Return the number of steps of a kind timed since the last reset.
+	 */
+	public static long getCount(int phase) {
+		return counts[phase];
+	}
+
+	/**
+	 * Return the simulated ticks taken by the steps of a kind.
+	 */
+	public static long getTicks(int phase) {
+		return ticks[phase];
+	}
+
+	/**
+	 * Return the host nanoseconds taken by the steps of a kind.
+	 */
+	public static long getNanos(int phase) {
+		return nanos[phase];
+	}
+
+	/**
+	 * Return the name of a kind of step.
+	 */
+	public static String getName(int phase) {
+		return names[phase];
+	}
+
+	/**
+	 * Return a table of the steps timed since the last reset, one line per
+	 * kind, with the average ticks and host microseconds of each.
+	 */
+	public static String statistics() {
+		StringBuffer buf = new StringBuffer();
+		for (int i = 0; i < numPhases; i++) {
+			buf.append(String.format("%-16s%6d calls", names[i], counts[i]));
+			if (counts[i] > 0)
+				buf.append(String.format("%10d ticks%10.1f us", ticks[i]
+						/ counts[i], nanos[i] / 1000.0 / counts[i]));
+			buf.append('\n');
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * The start of a step being timed.
+	 */
+	public static class Mark {
+		private Mark() {
+		}
+
+		private long ticks = Machine.timer().getTime();
+		private long nanos = System.nanoTime();
+	}
+
+	/** A whole <tt>exec()</tt> syscall. */
+	public static final int exec = 0;
+	/** A whole <tt>join()</tt> syscall, including the wait for the child. */
+	public static final int join = 1;
+	/** A whole <tt>exit()</tt> syscall, up to the process finishing. */
+	public static final int exit = 2;
+	/** Opening an executable and parsing its headers. */
+	public static final int coffLoad = 3;
+	/** <tt>loadSections()</tt>, including its page allocation. */
+	public static final int loadSections = 4;
+	/** Allocating the physical pages of a new process. */
+	public static final int pageAllocation = 5;
+	/** Releasing the address space of an exiting process. */
+	public static final int teardown = 6;
+
+	/** The number of kinds of step. */
+	public static final int numPhases = 7;
+
+	private static final String[] names = { "exec", "join", "exit",
+			"coff load", "load sections", "page allocation", "teardown" };
+
+	private static boolean enabled = Config.getBoolean(
+			"UserProcess.spawnStats", false);
+	private static long[] counts = new long[numPhases];
+	private static long[] ticks = new long[numPhases];
+	private static long[] nanos = new long[numPhases];
+}
@@ -0,0 +1,219 @@
+package nachos.userprog;
+
+import nachos.machine.*;
+import nachos.threads.*;
+
+/**
+ * A pair of submission and completion rings in the memory of a user process,
+ * through which the process can queue many file operations with a single
+ * syscall. The operations are carried out in order by a worker thread of the
+ * process, so the process keeps running while they complete.
+ *
+ * <p>
+ * The rings start at a word-aligned user address and are laid out as 32-bit
+ * words:
+ *
+ * <table>
+ * <tr>
+ * <td>offset</td>
+ * <td>contents</td>
+ * </tr>
+ * <tr>
+ * <td>0</td>
+ * <td>submission head, advanced by the kernel</td>
+ * </tr>
+ * <tr>
+ * <td>4</td>
+ * <td>submission tail, advanced by the process</td>
+ * </tr>
+ * <tr>
+ * <td>8</td>
+ * <td>completion head, advanced by the process</td>
+ * </tr>
+ * <tr>
+ * <td>12</td>
+ * <td>completion tail, advanced by the kernel</td>
+ * </tr>
+ * <tr>
+ * <td>16</td>
+ * <td>number of entries in each ring</td>
+ * </tr>
+ * <tr>
+ * <td>32</td>
+ * <td>submission entries: syscall number, four arguments, user data</td>
+ * </tr>
+ * <tr>
+ * <td>32 + 24 * entries</td>
+ * <td>completion entries: user data, result</td>
+ * </tr>
+ * </table>
+ *
+ * <p>
+ * The head and tail counters only ever increase; an entry's slot is its
+ * counter modulo the number of entries.
+ */
+public class SubmissionRing {
+	/**
+	 * Allocate a new ring. It is not used until <tt>start()</tt> is called.
+	 *
+	 * @param process
+	 *            the process that owns the ring.
+	 * @param address
+	 *            the user address of the ring.
+	 * @param entries
+	 *            the number of entries in each ring.
+	 */
+	public SubmissionRing(UserProcess process, int address, int entries) {
+		this.process = process;
+		this.address = address;
+		this.entries = entries;
+		worker = new Worker<int[]>(process, lock, "ring worker " + process.PID) {
+			protected void run(int[] sqe) {
+				complete(sqe);
+			}
+
+			protected void closed() {
+				cqSpace.wake();
+				completion.wakeAll();
+			}
+		};
+	}
+
+	/**
+	 * Return the number of bytes of user memory used by a ring with the
+	 * specified number of entries.
+	 *
+	 * @param entries
+	 *            the number of entries in each ring.
+	 * @return the size of the ring in bytes.
+	 */
+	public static int size(int entries) {
+		return sqOffset + entries * (sqeSize + cqeSize);
+	}
+
+	/**
+	 * Clear the ring header in user memory and start the worker thread.
+	 *
+	 * @return <tt>true</tt> if the ring was started, <tt>false</tt> if its
+	 *         memory could not be written.
+	 */
+	public boolean start() {
+		byte[] header = new byte[sqOffset];
+		Lib.bytesFromInt(header, entriesOffset, entries);
+		if (process.readVirtualMemory(address + size(entries) - 1, new byte[1]) != 1
+				|| process.writeVirtualMemory(address, header) != header.length)
+			return false;
+
+		worker.start();
+		return true;
+	}
+
+	/**
+	 * Queue up to <i>toSubmit</i> operations from the submission ring, then
+	 * wait until at least <i>minComplete</i> completions are waiting in the
+	 * completion ring.
+	 *
+	 * @param toSubmit
+	 *            the largest number of operations to submit.
+	 * @param minComplete
+	 *            the number of completions to wait for.
+	 * @return the number of operations submitted, or -1 if the ring could
+	 *         not be read.
+	 */
+	public int enter(int toSubmit, int minComplete) {
+		int sqHead = readWord(sqHeadOffset);
+		int sqTail = readWord(sqTailOffset);
+		if (sqHead == -1 || sqTail == -1)
+			return -1;
+
+		int count = Math.min(Math.max(toSubmit, 0), sqTail - sqHead);
+		if (count < 0 || count > entries)
+			return -1;
+
+		lock.acquire();
+		for (int i = 0; i < count; i++) {
+			int[] sqe = new int[sqeWords];
+			int slot = (sqHead + i) & (entries - 1);
+			for (int j = 0; j < sqeWords; j++)
+				sqe[j] = readWord(sqOffset + slot * sqeSize + j * 4);
+			worker.add(sqe);
+		}
+		writeWord(sqHeadOffset, sqHead + count);
+
+		// the process may have made room in the completion ring
+		cqSpace.wake();
+
+		minComplete = Math.min(minComplete, entries);
+		while (!worker.isClosing() && readWord(cqTailOffset) - readWord(cqHeadOffset) < minComplete)
+			completion.sleep();
+		lock.release();
+
+		return count;
+	}
+
+	/**
+	 * Stop the worker once the operation it is running is done. Queued
+	 * operations are dropped.
+	 */
+	public void close() {
+		worker.close();
+	}
+
+	/**
+	 * Run a submitted operation and post its completion, waiting for room in
+	 * the completion ring.
+	 */
+	private void complete(int[] sqe) {
+		int result = -1;
+		if (process.isRingOperation(sqe[0]))
+			result = process.handleSyscall(sqe[0], sqe[1], sqe[2], sqe[3], sqe[4]);
+		else
+			Lib.debug(dbgRing, "syscall " + sqe[0] + " not allowed in ring");
+
+		lock.acquire();
+		while (!worker.isClosing() && readWord(cqTailOffset) - readWord(cqHeadOffset) >= entries)
+			cqSpace.sleep();
+		if (!worker.isClosing()) {
+			int cqTail = readWord(cqTailOffset);
+			int slot = cqTail & (entries - 1);
+			int cqe = sqOffset + entries * sqeSize + slot * cqeSize;
+			writeWord(cqe, sqe[5]);
+			writeWord(cqe + 4, result);
+			writeWord(cqTailOffset, cqTail + 1);
+			completion.wakeAll();
+		}
+		lock.release();
+	}
+
+	private int readWord(int offset) {
+		byte[] data = new byte[4];
+		if (process.readVirtualMemory(address + offset, data) != 4)
+			return -1;
+		return Lib.bytesToInt(data, 0);
+	}
+
+	private void writeWord(int offset, int value) {
+		byte[] data = new byte[4];
+		Lib.bytesFromInt(data, 0, value);
+		process.writeVirtualMemory(address + offset, data);
+	}
+
+	/** The largest number of entries a ring can have. */
+	public static final int maxEntries = 64;
+
+	private static final int sqHeadOffset = 0, sqTailOffset = 4,
+			cqHeadOffset = 8, cqTailOffset = 12, entriesOffset = 16,
+			sqOffset = 32;
+	private static final int sqeWords = 6, sqeSize = sqeWords * 4,
+			cqeSize = 8;
+
+	private static final char dbgRing = 'r';
+
+	private UserProcess process;
+	private int address, entries;
+	private Worker<int[]> worker;
+
+	private Lock lock = new Lock();
+	private Condition2 cqSpace = new Condition2(lock);
+	private Condition2 completion = new Condition2(lock);
+}
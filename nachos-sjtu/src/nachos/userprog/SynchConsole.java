@@ -1,15 +1,29 @@
 package nachos.userprog;
 
+import nachos.machine.Config;
 import nachos.machine.Lib;
 import nachos.machine.Machine;
 import nachos.machine.OpenFile;
 import nachos.machine.SerialConsole;
+import nachos.machine.StandardConsole;
+import nachos.threads.Condition2;
+import nachos.threads.KThread;
 import nachos.threads.Lock;
 import nachos.threads.Semaphore;
 
 /**
  * Provides a simple, synchronized interface to the machine's console. The
  * interface can also be accessed through <tt>OpenFile</tt> objects.
+ * 
+ * <p>
+ * Output can be buffered, as selected by <tt>SynchConsole.buffering</tt>. By
+ * default (<tt>none</tt>) each byte is sent before a write returns. With
+ * <tt>line</tt> or <tt>full</tt>, bytes are queued in a kernel buffer of
+ * <tt>SynchConsole.bufferSize</tt> bytes and sent to the device by a drainer
+ * thread, so that a write waits only for room in the buffer. Line buffering
+ * holds back the last partial line until a newline is written, the buffer
+ * fills, or the console is read or flushed; full buffering sends bytes as
+ * soon as they are queued.
  */
 public class SynchConsole {
 	/**
@@ -32,6 +46,29 @@ public class SynchConsole {
 			}
 		};
 		console.setInterruptHandlers(receiveHandler, sendHandler);
+
+		if (console instanceof StandardConsole)
+			fifoConsole = (StandardConsole) console;
+
+		String mode = Config.getString("SynchConsole.buffering", "none");
+		if (mode.equals("line"))
+			buffering = lineBuffered;
+		else if (mode.equals("full"))
+			buffering = fullyBuffered;
+		else
+			Lib.assertTrue(mode.equals("none"), "unknown console buffering " + mode);
+
+		if (buffering == unbuffered)
+			return;
+
+		outBuffer = new byte[Config.getInteger("SynchConsole.bufferSize", 1024)];
+		Lib.assertTrue(outBuffer.length > 0);
+
+		new KThread(new Runnable() {
+			public void run() {
+				drain();
+			}
+		}).setName("console drainer").fork();
 	}
 
 	/**
@@ -46,27 +83,25 @@ public class SynchConsole {
 	 *         and no byte was available.
 	 */
 	public int readByte(boolean block) {
+		// a prompt should be seen before the answer is read
+		if (buffering == lineBuffered) {
+			writeLock.acquire();
+			release();
+			writeLock.release();
+		}
+
 		int value;
 		boolean intStatus = Machine.interrupt().disable();
 		readLock.acquire();
 
-		if (block || charAvailable) {
-			/**
-			 * charAvailable = false;<br>
-			 * readWait.P();
-			 * 
-			 * Bug identified by Xiangru Chen, Dec. 25th, 2008<br>
-			 * Bug fixed by Xiangru Chen, Sep. 15th, 2009
-			 * 
-			 */
+		/*
+		 * A receive interrupt may deliver several bytes, so take them from the
+		 * device until it runs dry, and only then wait for the next interrupt.
+		 * Bytes taken without waiting leave extra permits on readWait, which
+		 * just cost another look at the device.
+		 */
+		while ((value = console.readByte()) == -1 && block)
 			readWait.P();
-			charAvailable = false;
-
-			value = console.readByte();
-			Lib.assertTrue(value != -1);
-		} else {
-			value = -1;
-		}
 
 		readLock.release();
 		Machine.interrupt().restore(intStatus);
@@ -83,23 +118,118 @@ public class SynchConsole {
 	}
 
 	private void receiveInterrupt() {
-		charAvailable = true;
 		readWait.V();
 	}
 
 	/**
-	 * Send a byte. Blocks until the send is complete.
+	 * Send a byte. Unless output is buffered, blocks until the send is
+	 * complete.
 	 * 
 	 * @param value
 	 *            the byte to be sent (the upper 24 bits are ignored).
 	 */
 	public void writeByte(int value) {
+		write(new byte[] { (byte) value }, 0, 1);
+	}
+
+	/**
+	 * Queue bytes for sending, waiting for room in the buffer if necessary.
+	 * Unless output is buffered, waits for them to be sent.
+	 * 
+	 * @param buf
+	 *            the buffer holding the bytes.
+	 * @param offset
+	 *            the offset of the first byte in <i>buf</i>.
+	 * @param length
+	 *            the number of bytes to send.
+	 */
+	public void write(byte[] buf, int offset, int length) {
 		writeLock.acquire();
-		console.writeByte(value);
-		writeWait.P();
+
+		if (buffering == unbuffered) {
+			for (int i = 0; i < length;)
+				i += send(buf, offset + i, length - i);
+			writeLock.release();
+			return;
+		}
+
+		for (int i = 0; i < length; i++) {
+			while (queued - sent == outBuffer.length) {
+				// a full buffer goes out, newline or not
+				release();
+				outSpace.sleep();
+			}
+
+			byte value = buf[offset + i];
+			outBuffer[(int) (queued % outBuffer.length)] = value;
+			queued++;
+
+			if (buffering == fullyBuffered || value == '\n')
+				release();
+		}
+
 		writeLock.release();
 	}
 
+	/**
+	 * Wait until every queued byte has been sent, as when a process exits or
+	 * the machine halts.
+	 */
+	public void flush() {
+		writeLock.acquire();
+		if (buffering != unbuffered)
+			release();
+		while (sent < queued)
+			outSent.sleep();
+		writeLock.release();
+	}
+
+	/**
+	 * Let the drainer send every queued byte. The caller must hold the write
+	 * lock.
+	 */
+	private void release() {
+		if (released < queued) {
+			released = queued;
+			outData.wake();
+		}
+	}
+
+	private void drain() {
+		while (true) {
+			writeLock.acquire();
+			while (sent == released)
+				outData.sleep();
+			int start = (int) (sent % outBuffer.length);
+			int length = (int) Math.min(released - sent, outBuffer.length - start);
+			writeLock.release();
+
+			// the bytes cannot be overwritten until they are counted as sent
+			int amount = send(outBuffer, start, length);
+
+			writeLock.acquire();
+			sent += amount;
+			outSpace.wake();
+			outSent.wakeAll();
+			writeLock.release();
+		}
+	}
+
+	/**
+	 * Send as many bytes as the device takes in one burst and wait for them to
+	 * go out.
+	 */
+	private int send(byte[] buf, int offset, int length) {
+		int amount = 1;
+		if (fifoConsole != null)
+			amount = fifoConsole.writeBytes(buf, offset, length);
+		else
+			console.writeByte(buf[offset]);
+
+		writeWait.P();
+		return amount;
+	}
+
 	/**
 	 * Return an <tt>OpenFile</tt> that can be used to write this as a file.
 	 * 
@@ -113,14 +243,25 @@ public class SynchConsole {
 		writeWait.V();
 	}
 
-	private boolean charAvailable = false;
-
 	private SerialConsole console;
+	// the console, if it can take several bytes per interrupt
+	private StandardConsole fifoConsole = null;
 	private Lock readLock = new Lock();
 	private Lock writeLock = new Lock();
 	private Semaphore readWait = new Semaphore(0);
 	private Semaphore writeWait = new Semaphore(0);
 
+	private static final int unbuffered = 0, lineBuffered = 1, fullyBuffered = 2;
+	private int buffering = unbuffered;
+	private byte[] outBuffer;
+	// bytes ever queued and sent; the buffer holds the ones in between
+	private long queued = 0, sent = 0;
+	// bytes the drainer may send, short of a partial line being held back
+	private long released = 0;
+	private Condition2 outData = new Condition2(writeLock);
+	private Condition2 outSpace = new Condition2(writeLock);
+	private Condition2 outSent = new Condition2(writeLock);
+
 	private class File extends OpenFile {
 		File(boolean canRead, boolean canWrite) {
 			super(null, "SynchConsole");
@@ -153,8 +294,7 @@ public class SynchConsole {
 			if (!canWrite)
 				return 0;
 
-			for (int i = 0; i < length; i++)
-				SynchConsole.this.writeByte(buf[offset + i]);
+			SynchConsole.this.write(buf, offset, length);
 
 			return length;
 		}
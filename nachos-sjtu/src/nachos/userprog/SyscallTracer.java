@@ -0,0 +1,290 @@
+package nachos.userprog;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+import nachos.machine.*;
+import nachos.threads.*;
+
+/**
+ * Per-process syscall statistics, plus an optional strace-style log of every
+ * call.
+ *
+ * <p>
+ * Tracing is off unless <tt>UserProcess.syscallTrace</tt> is set. Each
+ * process then counts, for every syscall number, the calls made, the total
+ * and largest number of simulated ticks they took, and the bytes moved by the
+ * read and write calls. <tt>exportStats()</tt> writes the counts as CSV to
+ * the file named by <tt>UserProcess.syscallStatsFile</tt> on the stub file
+ * system, or prints them if no file is configured.
+ *
+ * <p>
+ * If <tt>UserProcess.syscallTraceLog</tt> names a file, each call is also
+ * logged there, with its arguments and result. Lines are queued and written
+ * by a background thread, so a traced process does not wait for the disk.
+ */
+public class SyscallTracer {
+	/**
+	 * Allocate a tracer for a process.
+	 *
+	 * @param pid
+	 *            the process ID.
+	 */
+	public SyscallTracer(int pid) {
+		this.pid = pid;
+
+		allTracers.add(this);
+	}
+
+	/**
+	 * Return whether syscall tracing is enabled.
+	 *
+	 * @return <tt>true</tt> if processes should be traced.
+	 */
+	public static boolean enabled() {
+		return enabled;
+	}
+
+	/**
+	 * Note that the process is making a syscall. Calls that do not return,
+	 * such as <tt>exit()</tt>, are logged here.
+	 *
+	 * @param syscall
+	 *            the syscall number.
+	 * @param a0
+	 *            the first syscall argument.
+	 * @param a1
+	 *            the second syscall argument.
+	 * @param a2
+	 *            the third syscall argument.
+	 * @param a3
+	 *            the fourth syscall argument.
+	 */
+	public void begin(int syscall, int a0, int a1, int a2, int a3) {
+		current = Math.max(0, Math.min(syscall, numSyscalls - 1));
+		this.syscall = syscall;
+		args[0] = a0;
+		args[1] = a1;
+		args[2] = a2;
+		args[3] = a3;
+		startTime = Machine.timer().getTime();
+
+		counts[current]++;
+
+		if (syscall == UserProcess.syscallExit
+				|| syscall == UserProcess.syscallHalt)
+			log(null, 0);
+	}
+
+	/**
+	 * Note that the syscall passed to <tt>begin()</tt> has returned.
+	 *
+	 * @param result
+	 *            the value returned to the process.
+	 */
+	public void end(int result) {
+		long ticks = Machine.timer().getTime() - startTime;
+
+		totalTicks[current] += ticks;
+		if (ticks > maxTicks[current])
+			maxTicks[current] = ticks;
+		if (result > 0 && movesBytes(syscall))
+			bytes[current] += result;
+
+		log(new Integer(result), ticks);
+	}
+
+	/**
+	 * Write the statistics of every traced process, as CSV rows of process
+	 * ID, syscall number and name, call count, total ticks, largest ticks and
+	 * bytes moved. Also flushes the call log. Does nothing unless tracing is
+	 * enabled.
+	 */
+	public static void exportStats() {
+		if (!enabled)
+			return;
+
+		if (logWriter != null)
+			logWriter.flush();
+
+		StringBuffer csv = new StringBuffer(
+				"pid,syscall,name,count,totalTicks,maxTicks,bytes\n");
+		for (SyscallTracer t : allTracers) {
+			for (int i = 0; i < numSyscalls; i++) {
+				if (t.counts[i] == 0)
+					continue;
+				csv.append(t.pid).append(',').append(i).append(',')
+						.append(syscallName(i)).append(',').append(t.counts[i])
+						.append(',').append(t.totalTicks[i]).append(',')
+						.append(t.maxTicks[i]).append(',').append(t.bytes[i])
+						.append('\n');
+			}
+		}
+
+		String fileName = Config.getString("UserProcess.syscallStatsFile", null);
+		FileSystem fileSystem = Machine.stubFileSystem();
+		if (fileName == null || fileSystem == null) {
+			System.out.print(csv);
+			return;
+		}
+
+		OpenFile file = fileSystem.open(fileName, true);
+		if (file == null) {
+			Lib.debug(dbgTrace, "cannot create " + fileName);
+			return;
+		}
+		byte[] data = csv.toString().getBytes();
+		file.write(0, data, 0, data.length);
+		file.close();
+	}
+
+	/**
+	 * Return the name of a syscall, as used in the log and the statistics.
+	 *
+	 * @param syscall
+	 *            the syscall number.
+	 * @return the name of the syscall, or its number if it has no name.
+	 */
+	public static String syscallName(int syscall) {
+		if (syscall >= 0 && syscall < syscallNames.length
+				&& syscallNames[syscall] != null)
+			return syscallNames[syscall];
+		return "syscall" + syscall;
+	}
+
+	private static boolean movesBytes(int syscall) {
+		return syscall == UserProcess.syscallRead
+				|| syscall == UserProcess.syscallWrite
+				|| syscall == UserProcess.syscallReadv
+				|| syscall == UserProcess.syscallWritev;
+	}
+
+	private void log(Integer result, long ticks) {
+		if (logWriter == null)
+			return;
+
+		StringBuffer line = new StringBuffer();
+		line.append(pid).append(' ').append(syscallName(syscall)).append('(');
+		for (int i = 0; i < args.length; i++) {
+			if (i > 0)
+				line.append(", ");
+			line.append("0x").append(Integer.toHexString(args[i]));
+		}
+		line.append(") = ");
+		if (result == null)
+			line.append('?');
+		else
+			line.append(result).append(" <").append(ticks).append('>');
+		line.append('\n');
+
+		logWriter.add(line.toString());
+	}
+
+	/**
+	 * Appends queued lines to the log file from its own thread. Lines are
+	 * taken in batches, and the file is written without holding the queue
+	 * lock, so traced processes only wait when the queue is full.
+	 */
+	private static class LogWriter implements Runnable {
+		LogWriter(OpenFile file) {
+			this.file = file;
+		}
+
+		void add(String line) {
+			lock.acquire();
+			while (queue.size() >= capacity)
+				notFull.sleep();
+			queue.add(line);
+			notEmpty.wake();
+			lock.release();
+		}
+
+		public void run() {
+			while (true) {
+				lock.acquire();
+				while (queue.isEmpty())
+					notEmpty.sleep();
+				StringBuffer text = new StringBuffer();
+				while (!queue.isEmpty())
+					text.append(queue.removeFirst());
+				writing = true;
+				notFull.wakeAll();
+				lock.release();
+
+				byte[] data = text.toString().getBytes();
+				position += Math.max(0, file.write(position, data, 0, data.length));
+
+				lock.acquire();
+				writing = false;
+				idle.wakeAll();
+				lock.release();
+			}
+		}
+
+		/**
+		 * Wait until every queued line is in the file.
+		 */
+		void flush() {
+			lock.acquire();
+			while (!queue.isEmpty() || writing)
+				idle.sleep();
+			lock.release();
+		}
+
+		private static final int capacity = 1024;
+
+		private OpenFile file;
+		private int position = 0;
+		private boolean writing = false;
+		private LinkedList<String> queue = new LinkedList<String>();
+		private Lock lock = new Lock();
+		private Condition2 notEmpty = new Condition2(lock);
+		private Condition2 notFull = new Condition2(lock);
+		private Condition2 idle = new Condition2(lock);
+	}
+
+	private static LogWriter startLogWriter() {
+		String fileName = Config.getString("UserProcess.syscallTraceLog", null);
+		FileSystem fileSystem = Machine.stubFileSystem();
+		if (!enabled || fileName == null || fileSystem == null)
+			return null;
+
+		OpenFile file = fileSystem.open(fileName, true);
+		if (file == null) {
+			Lib.debug(dbgTrace, "cannot create " + fileName);
+			return null;
+		}
+
+		LogWriter writer = new LogWriter(file);
+		new KThread(writer).setName("syscall log writer").fork();
+		return writer;
+	}
+
+	/** One past the largest syscall number traced separately. */
+	public static final int numSyscalls = 64;
+
+	private static final String[] syscallNames = { "halt", "exit", "exec",
+			"join", "creat", "open", "read", "write", "close", "unlink",
+			"mmap", null, null, null, "mkdir", "rmdir", "chdir", "getcwd",
+			"readdir", "stat", "link", "symlink", "readv", "writev", "munmap",
+			"fork", "shmget", "shmat", "shmdt", "shmrm", "ring_setup",
+			"ring_enter", "aio_read", "aio_write", "aio_poll", "aio_wait",
+			"pipe" };
+
+	private static final char dbgTrace = 'T';
+
+	private int pid;
+	private int syscall, current;
+	private int[] args = new int[4];
+	private long startTime;
+
+	private long[] counts = new long[numSyscalls];
+	private long[] totalTicks = new long[numSyscalls];
+	private long[] maxTicks = new long[numSyscalls];
+	private long[] bytes = new long[numSyscalls];
+
+	private static final boolean enabled = Config.getBoolean(
+			"UserProcess.syscallTrace", false);
+	private static ArrayList<SyscallTracer> allTracers = new ArrayList<SyscallTracer>();
+	private static LogWriter logWriter = startLogWriter();
+}
@@ -1,8 +1,5 @@
 package nachos.userprog;
 
-import java.util.ArrayList;
-import java.util.LinkedList;
-
 import nachos.machine.*;
 import nachos.threads.*;
 
@@ -27,9 +24,7 @@ public class UserKernel extends ThreadedKernel {
 		console = new SynchConsole(Machine.console());
 		
 		pageListLock = new Lock();
-		freePages = new LinkedList<Integer>();
-		for (int i = 0; i < Machine.processor().getNumPhysPages(); ++i)
-			freePages.add(i);
+		frameAllocator = new FrameAllocator(Machine.processor().getNumPhysPages());
 		
 		Machine.processor().setExceptionHandler(new Runnable() {
 			public void run() {
@@ -113,30 +108,50 @@ public class UserKernel extends ThreadedKernel {
 	 * Terminate this kernel. Never returns.
 	 */
 	public void terminate() {
+		console.flush();
+		SyscallTracer.exportStats();
+		
 		super.terminate();
 	}
 	
+	/**
+	 * Allocate <i>n</i> physical pages, all or nothing.
+	 * 
+	 * @return the page numbers, or <tt>null</tt> if not enough are free.
+	 */
 	public static int[] allocatePages(int n) {
+		SpawnStats.Mark mark = SpawnStats.begin();
 		pageListLock.acquire();
-		
-		if (freePages.size() < n) {
-			pageListLock.release();
-			return null;
-		}
-		
-		int[] ans = new int[n];
-		for (int i = 0; i < n; ++i)
-			ans[i] = freePages.remove();
-		
+		int[] ans = frameAllocator.allocate(n);
 		pageListLock.release();
+		SpawnStats.end(SpawnStats.pageAllocation, mark);
+		
 		return ans;
 	}
 	
-	public static void releasePage(int x) {
+	/**
+	 * Allocate <i>n</i> physically contiguous pages.
+	 * 
+	 * @return the first page number, or <tt>-1</tt> if there is no free run
+	 *         that long.
+	 */
+	public static int allocateContiguousPages(int n) {
 		pageListLock.acquire();
+		int first = frameAllocator.allocateContiguous(n);
+		pageListLock.release();
 		
-		freePages.add(x);
-		
+		return first;
+	}
+	
+	public static void releasePage(int x) {
+		pageListLock.acquire();
+		frameAllocator.free(x);
+		pageListLock.release();
+	}
+	
+	public static void releasePages(int[] pages) {
+		pageListLock.acquire();
+		frameAllocator.free(pages);
 		pageListLock.release();
 	}
 
@@ -144,7 +159,8 @@ public class UserKernel extends ThreadedKernel {
 	public static SynchConsole console;
 	
 	public static UserProcess rootProcess = null;
-	public static LinkedList<Integer> freePages;
+	/** The physical pages not in use by any process. */
+	public static FrameAllocator frameAllocator;
 	public static Lock pageListLock;
 
 }
@@ -32,6 +32,8 @@ public class UserProcess {
 		processLock.release();
 		childProcessList = new HashSet<Integer>();
 		over = new Semaphore(0);
+		if (SyscallTracer.enabled())
+			tracer = new SyscallTracer(PID);
 		
 		fileManager = new FileDescriptorManager();
 		fileManager.add(0, UserKernel.console.openForReading());
@@ -252,6 +254,119 @@ public class UserProcess {
 		return amount;
 	}
 
+	/**
+	 * Transfer data between an open file and this process's virtual memory
+	 * without an intermediate buffer. The virtual range is broken into runs of
+	 * physically contiguous frames, and the file reads into or writes from
+	 * main memory one run at a time. Frames are pinned with <tt>pinPage()</tt>
+	 * for the duration of the file operation; a page that cannot be pinned is
+	 * transferred through a one-page buffer instead.
+	 * 
+	 * <p>
+	 * The transfer stops at the first page that cannot be translated, or at
+	 * the first short read or write.
+	 * 
+	 * @param file
+	 *            the file to transfer data to or from.
+	 * @param vaddr
+	 *            the first byte of virtual memory to transfer.
+	 * @param length
+	 *            the number of bytes to transfer.
+	 * @param toMemory
+	 *            <tt>true</tt> to read from the file into memory,
+	 *            <tt>false</tt> to write from memory to the file.
+	 * @return the number of bytes transferred, or the file's error result if
+	 *         it failed before any bytes were transferred.
+	 */
+	protected int transferFile(OpenFile file, int vaddr, int length,
+			boolean toMemory) {
+		Lib.assertTrue(length >= 0);
+
+		byte[] memory = Machine.processor().getMemory();
+		int amount = 0;
+
+		while (amount < length) {
+			int vpn = Processor.pageFromAddress(vaddr + amount);
+			int pageOffset = Processor.offsetFromAddress(vaddr + amount);
+			int len = Math.min(length - amount, pageSize - pageOffset);
+
+			TranslationEntry entry = getTranslationEntry(vpn, toMemory);
+			if (entry == null)
+				break;
+
+			int transferred;
+			if (!pinPage(entry.ppn)) {
+				transferred = transferPage(file, vaddr + amount, len, toMemory);
+			} else {
+				int firstPpn = entry.ppn, lastPpn = entry.ppn;
+
+				while (amount + len < length) {
+					entry = getTranslationEntry(vpn + lastPpn - firstPpn + 1,
+							toMemory);
+					if (entry == null || entry.ppn != lastPpn + 1
+							|| !pinPage(entry.ppn))
+						break;
+					lastPpn++;
+					len += Math.min(length - amount - len, pageSize);
+				}
+
+				int paddr = Processor.makeAddress(firstPpn, pageOffset);
+				if (toMemory)
+					transferred = file.read(memory, paddr, len);
+				else
+					transferred = file.write(memory, paddr, len);
+
+				for (int ppn = firstPpn; ppn <= lastPpn; ++ppn)
+					unpinPage(ppn);
+			}
+
+			if (transferred <= 0)
+				return amount == 0 ? transferred : amount;
+
+			amount += transferred;
+			if (transferred < len)
+				break;
+		}
+
+		return amount;
+	}
+
+	private int transferPage(OpenFile file, int vaddr, int length,
+			boolean toMemory) {
+		byte[] buf = new byte[length];
+
+		if (toMemory) {
+			int transferred = file.read(buf, 0, length);
+			if (transferred <= 0)
+				return transferred;
+			return writeVirtualMemory(vaddr, buf, 0, transferred);
+		}
+
+		return file.write(buf, 0, readVirtualMemory(vaddr, buf, 0, length));
+	}
+
+	/**
+	 * Keep the specified physical page from being reused while a file
+	 * operation accesses it directly. Frames of a <tt>UserProcess</tt> never
+	 * move, so this always succeeds.
+	 * 
+	 * @param ppn
+	 *            the physical page to pin.
+	 * @return <tt>true</tt> if the page was pinned.
+	 */
+	protected boolean pinPage(int ppn) {
+		return true;
+	}
+
+	/**
+	 * Release a pin taken with <tt>pinPage()</tt>.
+	 * 
+	 * @param ppn
+	 *            the physical page to unpin.
+	 */
+	protected void unpinPage(int ppn) {
+	}
+
 	/**
 	 * Load the executable with the specified name into this process, and
 	 * prepare to pass it the specified arguments. Opens the executable, reads
@@ -273,20 +388,22 @@ public class UserProcess {
 			return false;
 		}
 
+		SpawnStats.Mark mark = SpawnStats.begin();
 		try {
-			coff = new Coff(executable);
+			coff = openExecutable(executable);
 		} catch (EOFException e) {
 			executable.close();
 			Lib.debug(dbgProcess, "\tcoff load failed");
 			return false;
 		}
+		SpawnStats.end(SpawnStats.coffLoad, mark);
 
 		// make sure the sections are contiguous and start at page 0
 		numPages = 0;
 		for (int s = 0; s < coff.getNumSections(); s++) {
 			CoffSection section = coff.getSection(s);
 			if (section.getFirstVPN() != numPages) {
-				coff.close();
+				closeExecutable();
 				Lib.debug(dbgProcess, "\tfragmented executable");
 				return false;
 			}
@@ -302,7 +419,7 @@ public class UserProcess {
 			argsSize += 4 + argv[i].length + 1;
 		}
 		if (argsSize > pageSize) {
-			coff.close();
+			closeExecutable();
 			Lib.debug(dbgProcess, "\targuments too long");
 			return false;
 		}
@@ -317,8 +434,10 @@ public class UserProcess {
 		// and finally reserve 1 page for arguments
 		numPages++;
 
+		mark = SpawnStats.begin();
 		if (!loadSections())
 			return false;
+		SpawnStats.end(SpawnStats.loadSections, mark);
 
 		// store arguments in last page
 		int entryOffset = (numPages - 1) * pageSize;
@@ -345,6 +464,26 @@ public class UserProcess {
 		return true;
 	}
 
+	/**
+	 * Parse the headers of the executable about to be loaded.
+	 * 
+	 * @param executable
+	 *            the open executable file.
+	 * @return the parsed executable.
+	 * @throws EOFException
+	 *             if the file is not a valid COFF executable.
+	 */
+	protected Coff openExecutable(OpenFile executable) throws EOFException {
+		return new Coff(executable);
+	}
+
+	/**
+	 * Release the executable opened by <tt>openExecutable()</tt>.
+	 */
+	protected void closeExecutable() {
+		coff.close();
+	}
+
 	/**
 	 * Allocates memory for this process, and loads the COFF sections into
 	 * memory. If this returns successfully, the process will definitely be run
@@ -356,7 +495,7 @@ public class UserProcess {
 		int[] physicalPages = UserKernel.allocatePages(numPages);
 		
 		if (physicalPages == null) {
-			coff.close();
+			closeExecutable();
 			Lib.debug(dbgProcess, "\tinsufficient physical memory");
 			return false;
 		}
@@ -388,10 +527,12 @@ public class UserProcess {
 	 * Release any resources allocated by <tt>loadSections()</tt>.
 	 */
 	protected void unloadSections() {
-		coff.close();
+		closeExecutable();
 		
+		int[] physicalPages = new int[numPages];
 		for (int i = 0; i < numPages; ++i)
-			UserKernel.releasePage(pageTable[i].ppn);
+			physicalPages[i] = pageTable[i].ppn;
+		UserKernel.releasePages(physicalPages);
 		pageTable = null;
 	}
 
@@ -433,10 +574,15 @@ public class UserProcess {
 	protected int handleExit(int status) {
 		this.returnStatus = status;
 		
-		for (int i = 2; i < maxFileDescriptorNum; ++i)
-			fileManager.close(i);
+		stopWorkers();
+		
+		// a pipe may have replaced the console
+		closeDescriptors(false);
+		UserKernel.console.flush();
 		
+		SpawnStats.Mark mark = SpawnStats.begin();
 		unloadSections();
+		SpawnStats.end(SpawnStats.teardown, mark);
 		
 		processLock.acquire();
 		activeProcesses--;
@@ -444,6 +590,7 @@ public class UserProcess {
 		deadProcessList.put(PID, this);
 		processLock.release();
 		
+		SpawnStats.end(SpawnStats.exit, exitMark);
 		over.V();
 		
 		if (activeProcesses == 0)
@@ -481,10 +628,13 @@ public class UserProcess {
 		
 		UserProcess child = newUserProcess();
 		childProcessList.add(child.PID);
+		inheritPipes(child);
 		saveState();
 		
 		if (!child.execute(filename, args)) {
 			Lib.debug(dbgProcess, "failed to execute child process");
+			// the child never runs, so nothing else closes its pipe ends
+			child.closeDescriptors(false);
 			return -1;
 		}
 		
@@ -577,16 +727,13 @@ public class UserProcess {
 			return -1;
 		}
 		
-		byte buf[] = new byte[size];
-		int length = file.read(buf, 0, size);
+		int length = transferFile(file, buffer, size, true);
 		
 		if (length == -1) {
 			Lib.debug(dbgProcess, "Fail to read the file");
 			return -1;
 		}
 		
-		length = writeVirtualMemory(buffer, buf, 0, length);
-		
 		return length;
 	}
 	
@@ -603,12 +750,62 @@ public class UserProcess {
 			return -1;
 		}
 		
-		byte buf[] = new byte[size];
-		int length = readVirtualMemory(buffer, buf, 0, size);
-
-		length = file.write(buf, 0, length);
-
-		return length;
+		return transferFile(file, buffer, size, false);
+	}
+	
+	protected int handleReadv(int fd, int iov, int iovcnt) {
+		return transferVector(fd, iov, iovcnt, true);
+	}
+	
+	protected int handleWritev(int fd, int iov, int iovcnt) {
+		return transferVector(fd, iov, iovcnt, false);
+	}
+	
+	/**
+	 * Perform a whole vectored transfer in one kernel entry. The iovec array
+	 * is copied in with a single <tt>readVirtualMemory()</tt>, then each
+	 * buffer goes through <tt>transferFile()</tt> in order. The transfer stops
+	 * at the first buffer that is not transferred in full.
+	 */
+	private int transferVector(int fd, int iov, int iovcnt, boolean toMemory) {
+		OpenFile file = fileManager.get(fd);
+		
+		if (file == null) {
+			Lib.debug(dbgProcess, "Invaild file descriptor");
+			return -1;
+		}
+		
+		if (iov < 0 || iovcnt < 0 || iovcnt > maxIovecCount) {
+			Lib.debug(dbgProcess, "Invalid iovec array");
+			return -1;
+		}
+		
+		byte[] vector = new byte[iovcnt * iovecSize];
+		if (readVirtualMemory(iov, vector) != vector.length) {
+			Lib.debug(dbgProcess, "Cannot read iovec array");
+			return -1;
+		}
+		
+		int amount = 0;
+		for (int i = 0; i < iovcnt; ++i) {
+			int base = Lib.bytesToInt(vector, i * iovecSize);
+			int len = Lib.bytesToInt(vector, i * iovecSize + 4);
+			
+			if (base < 0 || len < 0) {
+				Lib.debug(dbgProcess, "Invalid iovec entry " + i);
+				return amount == 0 ? -1 : amount;
+			}
+			
+			int transferred = transferFile(file, base, len, toMemory);
+			if (transferred < 0)
+				return amount == 0 ? -1 : amount;
+			
+			amount += transferred;
+			if (transferred < len)
+				break;
+		}
+		
+		return amount;
 	}
 	
 	protected int handleClose(int fd) {
@@ -634,7 +831,15 @@ public class UserProcess {
 	protected static final int syscallHalt = 0, syscallExit = 1, syscallExec = 2,
 			syscallJoin = 3, syscallCreate = 4, syscallOpen = 5,
 			syscallRead = 6, syscallWrite = 7, syscallClose = 8,
-			syscallUnlink = 9;
+			syscallUnlink = 9, syscallReadv = 22, syscallWritev = 23,
+			syscallRingSetup = 30, syscallRingEnter = 31, syscallAioRead = 32,
+			syscallAioWrite = 33, syscallAioPoll = 34, syscallAioWait = 35,
+			syscallPipe = 36;
+
+	/** The size of a <tt>struct iovec</tt> in user memory. */
+	protected static final int iovecSize = 8;
+	/** The largest iovec array accepted by <tt>readv()</tt>/<tt>writev()</tt>. */
+	protected static final int maxIovecCount = 64;
 
 	/**
 	 * Handle a syscall exception. Called by <tt>handleException()</tt>. The
@@ -688,6 +893,44 @@ public class UserProcess {
 	 * <td>9</td>
 	 * <td><tt>int  unlink(char *name);</tt></td>
 	 * </tr>
+	 * <tr>
+	 * <td>22</td>
+	 * <td><tt>int  readv(int fd, struct iovec *iov, int iovcnt);
+     *								</tt></td>
+	 * </tr>
+	 * <tr>
+	 * <td>23</td>
+	 * <td><tt>int  writev(int fd, struct iovec *iov, int iovcnt);
+     *								</tt></td>
+	 * </tr>
+	 * <tr>
+	 * <td>30</td>
+	 * <td><tt>int  ring_setup(void *ring, int entries);</tt></td>
+	 * </tr>
+	 * <tr>
+	 * <td>31</td>
+	 * <td><tt>int  ring_enter(int toSubmit, int minComplete);</tt></td>
+	 * </tr>
+	 * <tr>
+	 * <td>32</td>
+	 * <td><tt>int  aio_read(int fd, char *buffer, int size);</tt></td>
+	 * </tr>
+	 * <tr>
+	 * <td>33</td>
+	 * <td><tt>int  aio_write(int fd, char *buffer, int size);</tt></td>
+	 * </tr>
+	 * <tr>
+	 * <td>34</td>
+	 * <td><tt>int  aio_poll(int handle, int *result);</tt></td>
+	 * </tr>
+	 * <tr>
+	 * <td>35</td>
+	 * <td><tt>int  aio_wait(int handle);</tt></td>
+	 * </tr>
+	 * <tr>
+	 * <td>36</td>
+	 * <td><tt>int  pipe(int fds[2]);</tt></td>
+	 * </tr>
 	 * </table>
 	 * 
 	 * @param syscall
@@ -707,11 +950,20 @@ public class UserProcess {
 		case syscallHalt:
 			return handleHalt();
 		case syscallExit:
+			exitMark = SpawnStats.begin();
 			return handleExit(a0);
-		case syscallExec:
-			return handleExec(a0, a1, a2);
-		case syscallJoin:
-			return handleJoin(a0, a1);
+		case syscallExec: {
+			SpawnStats.Mark mark = SpawnStats.begin();
+			int pid = handleExec(a0, a1, a2);
+			SpawnStats.end(SpawnStats.exec, mark);
+			return pid;
+		}
+		case syscallJoin: {
+			SpawnStats.Mark mark = SpawnStats.begin();
+			int result = handleJoin(a0, a1);
+			SpawnStats.end(SpawnStats.join, mark);
+			return result;
+		}
 		case syscallCreate:
 			return handleCreate(a0);
 		case syscallOpen:
@@ -724,6 +976,24 @@ public class UserProcess {
 			return handleClose(a0);
 		case syscallUnlink:
 			return handleUnlink(a0);
+		case syscallReadv:
+			return handleReadv(a0, a1, a2);
+		case syscallWritev:
+			return handleWritev(a0, a1, a2);
+		case syscallRingSetup:
+			return handleRingSetup(a0, a1);
+		case syscallRingEnter:
+			return handleRingEnter(a0, a1);
+		case syscallAioRead:
+			return handleAioSubmit(syscallRead, a0, a1, a2);
+		case syscallAioWrite:
+			return handleAioSubmit(syscallWrite, a0, a1, a2);
+		case syscallAioPoll:
+			return handleAioPoll(a0, a1);
+		case syscallAioWait:
+			return handleAioWait(a0);
+		case syscallPipe:
+			return handlePipe(a0);
 		default:
 			Lib.debug(dbgProcess, "Unknown syscall " + syscall);
 			exitNormally = false;
@@ -746,13 +1016,7 @@ public class UserProcess {
 
 		switch (cause) {
 		case Processor.exceptionSyscall:
-			int result = handleSyscall(processor.readRegister(Processor.regV0),
-					processor.readRegister(Processor.regA0), processor
-							.readRegister(Processor.regA1), processor
-							.readRegister(Processor.regA2), processor
-							.readRegister(Processor.regA3));
-			processor.writeRegister(Processor.regV0, result);
-			processor.advancePC();
+			handleSyscallException();
 			break;
 
 		default:
@@ -764,6 +1028,205 @@ public class UserProcess {
 		}
 	}
 	
+	/**
+	 * Set up the submission and completion rings at <i>address</i>, each with
+	 * <i>entries</i> entries. A process has at most one pair of rings, and a
+	 * forked child does not inherit them.
+	 * 
+	 * @return 0 on success, or -1 on error.
+	 */
+	protected int handleRingSetup(int address, int entries) {
+		if (ring != null || entries <= 0 || entries > SubmissionRing.maxEntries
+				|| (entries & (entries - 1)) != 0 || address <= 0
+				|| address % 4 != 0) {
+			Lib.debug(dbgProcess, "Invalid ring_setup");
+			return -1;
+		}
+		
+		SubmissionRing newRing = new SubmissionRing(this, address, entries);
+		if (!newRing.start())
+			return -1;
+		
+		ring = newRing;
+		return 0;
+	}
+	
+	protected int handleRingEnter(int toSubmit, int minComplete) {
+		if (ring == null) {
+			Lib.debug(dbgProcess, "ring_enter without ring_setup");
+			return -1;
+		}
+		
+		return ring.enter(toSubmit, minComplete);
+	}
+	
+	/**
+	 * Create a pipe, storing the descriptor of its read end in <i>fds</i>[0]
+	 * and of its write end in <i>fds</i>[1].
+	 * 
+	 * @return 0 on success, or -1 on error.
+	 */
+	protected int handlePipe(int fds) {
+		Pipe pipe = new Pipe();
+		OpenFile readEnd = pipe.openForReading();
+		OpenFile writeEnd = pipe.openForWriting();
+		
+		int readFd = fileManager.add(readEnd);
+		if (readFd == -1) {
+			Lib.debug(dbgProcess, "no free file descriptor for pipe");
+			readEnd.close();
+			writeEnd.close();
+			return -1;
+		}
+		
+		int writeFd = fileManager.add(writeEnd);
+		if (writeFd == -1) {
+			Lib.debug(dbgProcess, "no free file descriptor for pipe");
+			fileManager.close(readFd);
+			writeEnd.close();
+			return -1;
+		}
+		
+		byte[] data = new byte[8];
+		Lib.bytesFromInt(data, 0, readFd);
+		Lib.bytesFromInt(data, 4, writeFd);
+		if (writeVirtualMemory(fds, data) != data.length) {
+			fileManager.close(readFd);
+			fileManager.close(writeFd);
+			return -1;
+		}
+		
+		return 0;
+	}
+	
+	/**
+	 * Close this process's pipe ends if <i>pipesOnly</i> is set, or else
+	 * every descriptor it holds.
+	 */
+	protected void closeDescriptors(boolean pipesOnly) {
+		for (int i = 0; i < maxFileDescriptorNum; ++i) {
+			OpenFile file = fileManager.get(i);
+			if (file != null && (!pipesOnly || Pipe.isEnd(file)))
+				fileManager.close(i);
+		}
+	}
+	
+	/**
+	 * Give <i>child</i> its own ends of this process's pipes, under the same
+	 * descriptors. A pipe at descriptor 0 or 1 replaces the child's console.
+	 */
+	protected void inheritPipes(UserProcess child) {
+		for (int i = 0; i < maxFileDescriptorNum; ++i) {
+			OpenFile end = Pipe.duplicate(fileManager.get(i));
+			if (end == null)
+				continue;
+			
+			if (child.fileManager.get(i) != null)
+				child.fileManager.close(i);
+			child.fileManager.add(i, end);
+		}
+	}
+	
+	/**
+	 * Queue an asynchronous read or write, carried out on a worker thread.
+	 * 
+	 * @return a handle for <tt>aio_poll()</tt> and <tt>aio_wait()</tt>, or -1
+	 *         on error.
+	 */
+	protected int handleAioSubmit(int syscall, int fd, int buffer, int size) {
+		if (fileManager.get(fd) == null || size < 0) {
+			Lib.debug(dbgProcess, "Invalid asynchronous request");
+			return -1;
+		}
+		
+		if (asyncIO == null)
+			asyncIO = new AsyncIO(this);
+		return asyncIO.submit(syscall, fd, buffer, size);
+	}
+	
+	protected int handleAioPoll(int handle, int result) {
+		if (asyncIO == null)
+			return -1;
+		
+		int[] value = new int[1];
+		int status = asyncIO.poll(handle, value);
+		if (status == 1) {
+			byte[] data = new byte[4];
+			Lib.bytesFromInt(data, 0, value[0]);
+			if (writeVirtualMemory(result, data) != data.length)
+				return -1;
+		}
+		return status;
+	}
+	
+	protected int handleAioWait(int handle) {
+		return asyncIO == null ? -1 : asyncIO.waitFor(handle);
+	}
+	
+	/**
+	 * Stop the ring and asynchronous I/O workers, if there are any, so nothing
+	 * touches this process's memory or files once it starts exiting. This
+	 * process's pipe ends are closed first, since a worker blocked on one
+	 * would otherwise never return.
+	 */
+	protected void stopWorkers() {
+		closeDescriptors(true);
+		if (ring != null) {
+			ring.close();
+			ring = null;
+		}
+		if (asyncIO != null) {
+			asyncIO.close();
+			asyncIO = null;
+		}
+	}
+	
+	/**
+	 * Return whether a syscall may be submitted through the ring. Only file
+	 * operations may; anything that affects the process as a whole must be a
+	 * real syscall.
+	 */
+	protected boolean isRingOperation(int syscall) {
+		switch (syscall) {
+		case syscallCreate:
+		case syscallOpen:
+		case syscallRead:
+		case syscallWrite:
+		case syscallClose:
+		case syscallUnlink:
+		case syscallReadv:
+		case syscallWritev:
+			return true;
+		default:
+			return false;
+		}
+	}
+	
+	/**
+	 * Handle a syscall exception: pass the syscall number and arguments in the
+	 * registers to <tt>handleSyscall()</tt>, return its result in V0 and
+	 * advance the PC past the syscall instruction. The call is traced if
+	 * syscall tracing is enabled.
+	 */
+	protected void handleSyscallException() {
+		Processor processor = Machine.processor();
+
+		int syscall = processor.readRegister(Processor.regV0);
+		int a0 = processor.readRegister(Processor.regA0);
+		int a1 = processor.readRegister(Processor.regA1);
+		int a2 = processor.readRegister(Processor.regA2);
+		int a3 = processor.readRegister(Processor.regA3);
+
+		if (tracer != null)
+			tracer.begin(syscall, a0, a1, a2, a3);
+		int result = handleSyscall(syscall, a0, a1, a2, a3);
+		if (tracer != null)
+			tracer.end(result);
+
+		processor.writeRegister(Processor.regV0, result);
+		processor.advancePC();
+	}
+	
 	public class FileDescriptorManager {
 		public int add(OpenFile file) {
 			for (int i = 0; i < maxFileDescriptorNum; ++i)
@@ -844,10 +1307,18 @@ public class UserProcess {
 	
 	protected int returnStatus;
 	protected boolean exitNormally = true;
+	// when the process called exit(), if spawn timing is on
+	private SpawnStats.Mark exitMark = null;
 	
 	protected Semaphore over;
 
 	protected FileDescriptorManager fileManager;
+	/** This process's syscall statistics, or <tt>null</tt> if not tracing. */
+	protected SyscallTracer tracer = null;
+	/** The submission and completion rings, or <tt>null</tt> if none. */
+	protected SubmissionRing ring = null;
+	/** Outstanding asynchronous reads and writes, or <tt>null</tt> if none. */
+	protected AsyncIO asyncIO = null;
 	protected static final int maxFileDescriptorNum = 16;
 	protected static final int maxFilenameLength = 256;
 	protected static Hashtable<String, Integer> usingFiles = new Hashtable<String, Integer>();
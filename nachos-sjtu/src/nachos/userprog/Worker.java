@@ -0,0 +1,135 @@
+package nachos.userprog;
+
+import java.util.LinkedList;
+
+import nachos.machine.*;
+import nachos.threads.*;
+
+/**
+ * A kernel thread of a user process that carries out queued jobs in order,
+ * while the process keeps running. <tt>AsyncIO</tt> and
+ * <tt>SubmissionRing</tt> each keep one.
+ *
+ * <p>
+ * The queue is guarded by a lock the owner passes in, so that the owner can
+ * keep its own state under the same lock and wait for <tt>isClosing()</tt>.
+ *
+ * @param <T>
+ *            the type of the jobs.
+ */
+public abstract class Worker<T> {
+	/**
+	 * Allocate a new worker. Its thread is not started until
+	 * <tt>start()</tt> is called.
+	 *
+	 * @param process
+	 *            the process the worker runs for.
+	 * @param lock
+	 *            the lock that guards the queue.
+	 * @param name
+	 *            the name of the worker thread.
+	 */
+	public Worker(UserProcess process, Lock lock, String name) {
+		this.process = process;
+		this.lock = lock;
+		this.name = name;
+		workAvailable = new Condition2(lock);
+	}
+
+	/**
+	 * Start the worker thread, unless it has already been started.
+	 */
+	public void start() {
+		if (thread != null)
+			return;
+
+		thread = new UThread(process);
+		thread.setTarget(new Runnable() {
+			public void run() {
+				work();
+			}
+		}).setName(name);
+		thread.fork();
+	}
+
+	/**
+	 * Queue a job. The caller must hold the lock.
+	 *
+	 * @param job
+	 *            the job to run.
+	 */
+	public void add(T job) {
+		Lib.assertTrue(lock.isHeldByCurrentThread());
+
+		queue.add(job);
+		workAvailable.wake();
+	}
+
+	/**
+	 * Return whether <tt>close()</tt> has been called. The caller must hold
+	 * the lock.
+	 */
+	public boolean isClosing() {
+		return closing;
+	}
+
+	/**
+	 * Stop the worker once the job it is running is done, and wait for it
+	 * unless called by the worker itself. Queued jobs are dropped. Anything
+	 * the job could block on must already have been released, or this waits
+	 * for it.
+	 */
+	public void close() {
+		lock.acquire();
+		closing = true;
+		queue.clear();
+		workAvailable.wake();
+		closed();
+		lock.release();
+
+		if (thread != null && KThread.currentThread() != thread)
+			thread.join();
+	}
+
+	/**
+	 * Carry out one job. Called without the lock held.
+	 *
+	 * @param job
+	 *            the job to run.
+	 */
+	protected abstract void run(T job);
+
+	/**
+	 * Wake anything else that waits under the lock, once the worker is
+	 * closing. Called with the lock held; does nothing by default.
+	 */
+	protected void closed() {
+	}
+
+	private void work() {
+		while (true) {
+			lock.acquire();
+			while (!closing && queue.isEmpty())
+				workAvailable.sleep();
+			if (closing) {
+				lock.release();
+				break;
+			}
+			T job = queue.removeFirst();
+			lock.release();
+
+			run(job);
+		}
+
+		KThread.finish();
+	}
+
+	private UserProcess process;
+	private Lock lock;
+	private String name;
+	private UThread thread = null;
+	private boolean closing = false;
+
+	private LinkedList<T> queue = new LinkedList<T>();
+	private Condition2 workAvailable;
+}
@@ -0,0 +1,104 @@
+package nachos.vm;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+import nachos.machine.Lib;
+
+/**
+ * Adaptive replacement (ARC). Resident pages seen once are kept in
+ * <tt>T1</tt> and pages seen again in <tt>T2</tt>, both in LRU order; the
+ * ghost lists <tt>B1</tt> and <tt>B2</tt> remember pages recently evicted
+ * from each. A fault on a page in <tt>B1</tt> means <tt>T1</tt> was too
+ * small, one in <tt>B2</tt> that <tt>T2</tt> was, and the target size of
+ * <tt>T1</tt> moves accordingly. A page counts as seen again when a TLB miss
+ * finds it resident.
+ */
+public class ARCMemManager extends MemoryManager {
+	public ARCMemManager() {
+		super();
+
+		t1 = new FrameList(numPhysPages);
+		t2 = new FrameList(numPhysPages);
+	}
+
+	@Override
+	protected int chooseVictim(PageInfo incoming) {
+		int ppn = -1;
+		if (t1.size() > 0 && (t1.size() > target
+				|| (b2.contains(incoming) && t1.size() == target)))
+			ppn = evict(t1, b1);
+		if (ppn == -1)
+			ppn = evict(t2, b2);
+		if (ppn == -1)
+			ppn = evict(t1, b1);
+
+		Lib.assertTrue(ppn != -1);
+		return ppn;
+	}
+
+	@Override
+	protected void pageLoaded(int ppn, PageInfo info) {
+		if (b1.contains(info)) {
+			target = Math.min(numPhysPages, target + Math.max(1, b2.size() / b1.size()));
+			b1.remove(info);
+			t2.addLast(ppn);
+		} else if (b2.contains(info)) {
+			target = Math.max(0, target - Math.max(1, b1.size() / b2.size()));
+			b2.remove(info);
+			t2.addLast(ppn);
+		} else {
+			t1.addLast(ppn);
+		}
+
+		// the ghosts of T1 and the whole directory stay bounded
+		while (t1.size() + b1.size() > numPhysPages && !b1.isEmpty())
+			removeOldest(b1);
+		while (t1.size() + t2.size() + b1.size() + b2.size() > 2 * numPhysPages
+				&& !b2.isEmpty())
+			removeOldest(b2);
+	}
+
+	@Override
+	protected void pageAccessed(int ppn) {
+		if (t1.contains(ppn) || t2.contains(ppn)) {
+			t1.remove(ppn);
+			t2.addLast(ppn);
+		}
+	}
+
+	@Override
+	protected void pageRemoved(int ppn) {
+		t1.remove(ppn);
+		t2.remove(ppn);
+	}
+
+	/**
+	 * Evict the least recently used replaceable frame of <i>list</i>,
+	 * remembering its page in <i>ghosts</i>.
+	 */
+	private int evict(FrameList list, LinkedHashSet<PageInfo> ghosts) {
+		int ppn = list.first();
+		while (ppn != -1 && !isReplaceable(ppn))
+			ppn = list.next(ppn);
+		if (ppn == -1)
+			return -1;
+
+		list.remove(ppn);
+		ghosts.add(VMKernel.coreMap[ppn].info);
+		return ppn;
+	}
+
+	private static void removeOldest(LinkedHashSet<PageInfo> ghosts) {
+		Iterator<PageInfo> oldest = ghosts.iterator();
+		oldest.next();
+		oldest.remove();
+	}
+
+	private FrameList t1, t2;
+	// pages recently evicted from t1 and t2, oldest first
+	private LinkedHashSet<PageInfo> b1 = new LinkedHashSet<PageInfo>();
+	private LinkedHashSet<PageInfo> b2 = new LinkedHashSet<PageInfo>();
+	// the target size of t1
+	private int target = 0;
+}
@@ -0,0 +1,102 @@
+package nachos.vm;
+
+import java.io.EOFException;
+import java.util.Hashtable;
+import java.util.LinkedList;
+
+import nachos.machine.Lib;
+import nachos.machine.OpenFile;
+
+/**
+ * The executables recently run, so that running one again skips parsing the
+ * COFF headers and reading its text from the file system. Images are keyed
+ * by the identity of the file, and an image no process runs is kept until
+ * <tt>maxUnusedImages</tt> more recently used ones push it out. Callers must
+ * hold the VM lock.
+ */
+public class ExecCache {
+	/**
+	 * Return the image of <i>executable</i>, parsing it if it is not cached.
+	 * The caller becomes a user of the image. If a cached image is used,
+	 * <i>executable</i> is closed, since the image has its own handle.
+	 */
+	public ExecImage acquire(Object key, OpenFile executable) throws EOFException {
+		ExecImage image = images.get(key);
+		if (image != null && image.length() != executable.length()) {
+			// rewritten since it was cached
+			invalidate(key);
+			image = null;
+		}
+
+		if (image != null) {
+			executable.close();
+			unused.remove(image);
+			hits++;
+		} else {
+			image = new ExecImage(key, executable, nextOwnerPid++);
+			images.put(key, image);
+			misses++;
+		}
+
+		image.users++;
+		return image;
+	}
+
+	/**
+	 * Remove a user of <i>image</i>. An image nobody uses stays cached, unless
+	 * it was invalidated while in use.
+	 */
+	public void release(ExecImage image) {
+		Lib.assertTrue(image.users > 0);
+		if (--image.users > 0)
+			return;
+
+		if (!image.cached) {
+			image.destroy();
+			return;
+		}
+
+		unused.addFirst(image);
+		while (unused.size() > maxUnusedImages)
+			evict(unused.getLast());
+	}
+
+	/**
+	 * Forget the image of the file identified by <i>key</i>, as when the file
+	 * is written. Processes running it keep using the old image.
+	 */
+	public void invalidate(Object key) {
+		ExecImage image = images.remove(key);
+		if (image == null)
+			return;
+
+		image.cached = false;
+		if (image.users == 0) {
+			unused.remove(image);
+			image.destroy();
+		}
+	}
+
+	private void evict(ExecImage image) {
+		Lib.debug(dbgVM, "evicting exec image " + image.getKey());
+		unused.remove(image);
+		images.remove(image.getKey());
+		image.destroy();
+	}
+
+	public String statistics() {
+		return "Exec cache: hits " + hits + ", misses " + misses;
+	}
+
+	/** The number of images kept while no process runs them. */
+	public static final int maxUnusedImages = 8;
+
+	private static final char dbgVM = 'v';
+
+	private Hashtable<Object, ExecImage> images = new Hashtable<Object, ExecImage>();
+	// least recently used at the end
+	private LinkedList<ExecImage> unused = new LinkedList<ExecImage>();
+	// image frames are owned by pids no process has
+	private int nextOwnerPid = Integer.MIN_VALUE;
+	private int hits = 0, misses = 0;
+}
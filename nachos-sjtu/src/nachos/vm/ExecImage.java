@@ -0,0 +1,104 @@
+package nachos.vm;
+
+import java.io.EOFException;
+
+import nachos.machine.Coff;
+import nachos.machine.CoffSection;
+import nachos.machine.Lib;
+import nachos.machine.OpenFile;
+
+/**
+ * A parsed executable shared by every process running it. Pages of its
+ * read-only sections are loaded once into frames that all those processes
+ * map read-only. The kernel keeps its own reference to each such frame, so
+ * the text stays resident between runs of the program until the clock evicts
+ * it or the image is dropped from the <tt>ExecCache</tt>.
+ */
+public class ExecImage extends SharedPages {
+	public ExecImage(Object key, OpenFile executable, int ownerPid) throws EOFException {
+		this.key = key;
+		this.ownerPid = ownerPid;
+		coff = new Coff(executable);
+		length = executable.length();
+
+		int numPages = 0;
+		for (int s = 0; s < coff.getNumSections(); s++)
+			numPages = Math.max(numPages, coff.getSection(s).getFirstVPN() + coff.getSection(s).getLength());
+
+		sections = new CoffSection[numPages];
+		for (int s = 0; s < coff.getNumSections(); s++) {
+			CoffSection section = coff.getSection(s);
+			if (section.isReadOnly())
+				for (int i = 0; i < section.getLength(); i++)
+					sections[section.getFirstVPN() + i] = section;
+		}
+	}
+
+	public Object getKey() {
+		return key;
+	}
+
+	public Coff getCoff() {
+		return coff;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * @return <tt>true</tt> if page <i>vpn</i> of the program is read-only
+	 *         and is loaded through this image.
+	 */
+	public boolean isShared(int vpn) {
+		return vpn >= 0 && vpn < sections.length && sections[vpn] != null;
+	}
+
+	public PageInfo owner(int vpn) {
+		return new PageInfo(ownerPid, vpn);
+	}
+
+	/**
+	 * Drop the kernel's references to the resident text frames and close the
+	 * executable. No process may be running the program.
+	 */
+	public void destroy() {
+		for (int vpn = 0; vpn < sections.length; vpn++) {
+			Integer ppn = getFrame(vpn);
+			if (ppn == null)
+				continue;
+
+			PageInfo owner = owner(vpn);
+			VMKernel.invertedPageTable.remove(owner);
+			Page page = VMKernel.coreMap[ppn];
+			Lib.assertTrue(page.removeUser(owner));
+			page.entry.valid = false;
+			release(vpn, ppn, false);
+			VMKernel.memoryManager.removePage(ppn);
+		}
+
+		coff.close();
+	}
+
+	protected boolean isReadOnly(int vpn) {
+		return true;
+	}
+
+	protected void fill(int vpn, int ppn) {
+		CoffSection section = sections[vpn];
+		section.loadPage(vpn - section.getFirstVPN(), ppn);
+	}
+
+	protected void writeBack(int vpn, int ppn) {
+		Lib.assertNotReached("text page written");
+	}
+
+	int users = 0;
+	boolean cached = true;
+
+	private Object key;
+	private int ownerPid;
+	private Coff coff;
+	private int length;
+	private CoffSection[] sections;
+}
@@ -0,0 +1,68 @@
+package nachos.vm;
+
+/**
+ * A list of frames, least recently added first, with constant-time insertion,
+ * removal and membership tests. A frame is in a list at most once.
+ */
+class FrameList {
+	FrameList(int numPhysPages) {
+		next = new int[numPhysPages];
+		prev = new int[numPhysPages];
+		member = new boolean[numPhysPages];
+	}
+
+	boolean contains(int ppn) {
+		return member[ppn];
+	}
+
+	int size() {
+		return size;
+	}
+
+	/** Add a frame at the end, as the most recent. */
+	void addLast(int ppn) {
+		if (member[ppn])
+			remove(ppn);
+
+		member[ppn] = true;
+		prev[ppn] = tail;
+		next[ppn] = -1;
+		if (tail == -1)
+			head = ppn;
+		else
+			next[tail] = ppn;
+		tail = ppn;
+		size++;
+	}
+
+	void remove(int ppn) {
+		if (!member[ppn])
+			return;
+
+		if (prev[ppn] == -1)
+			head = next[ppn];
+		else
+			next[prev[ppn]] = next[ppn];
+		if (next[ppn] == -1)
+			tail = prev[ppn];
+		else
+			prev[next[ppn]] = prev[ppn];
+		member[ppn] = false;
+		size--;
+	}
+
+	/** Return the oldest frame, or -1 if the list is empty. */
+	int first() {
+		return head;
+	}
+
+	/** Return the frame after <i>ppn</i>, or -1 if it is the last. */
+	int next(int ppn) {
+		return next[ppn];
+	}
+
+	private int[] next, prev;
+	private boolean[] member;
+	private int head = -1, tail = -1;
+	private int size = 0;
+}
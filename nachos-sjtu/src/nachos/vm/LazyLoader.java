@@ -2,20 +2,21 @@ package nachos.vm;
 
 import nachos.machine.Coff;
 import nachos.machine.CoffSection;
-import nachos.machine.Lib;
 import nachos.machine.Machine;
 import nachos.machine.Processor;
 import nachos.machine.TranslationEntry;
 import nachos.vm.SwapManager.SwapPage;
 
 public class LazyLoader {
-	public LazyLoader(Coff coff) {
+	public LazyLoader(ExecImage image) {
+		Coff coff = image.getCoff();
 		int totPages = 0;
 		for (int i = 0; i < coff.getNumSections(); ++i) {
 			CoffSection section = coff.getSection(i);
 			totPages += section.getLength();
 		}
 
+		this.image = image;
 		this.coff = coff;
 		pages = new CodePage[totPages];
 
@@ -50,13 +51,8 @@ public class LazyLoader {
 		TranslationEntry entry;
 		SwapPage swapPage = VMKernel.getSwapManager().getSwapPage(info);
 		if (swapPage != null) {
-			entry = swapPage.entry;
-			entry.ppn = ppn;
-			entry.valid = true;
-			entry.used = false;
-			entry.dirty = false;
-			Lib.assertTrue(VMKernel.getSwapManager().read(swapPage.frameNo, Machine.processor().getMemory(), Processor.makeAddress(ppn, 0)),
-						   "swap file read error");
+			entry = swapEntry(swapPage, ppn);
+			VMKernel.memoryManager.readSwap(info, swapPage, ppn);
 		}
 		else {
 			if (isCodePage(info.vpn))
@@ -66,6 +62,37 @@ public class LazyLoader {
 		return entry;
 	}
 
+	/**
+	 * Return the entry mapping a page read back from swap into <i>ppn</i>.
+	 */
+	static TranslationEntry swapEntry(SwapPage swapPage, int ppn) {
+		TranslationEntry entry = swapPage.entry;
+		entry.ppn = ppn;
+		entry.valid = true;
+		// only writable pages reach swap; a copy-on-write entry may still say otherwise
+		entry.readOnly = false;
+		entry.used = false;
+		entry.dirty = false;
+		return entry;
+	}
+
+	/**
+	 * Add a process that loads pages through this loader, as after a fork.
+	 */
+	public LazyLoader share() {
+		users++;
+		return this;
+	}
+	
+	/**
+	 * Remove a process that loads pages through this loader, giving the
+	 * executable back to the cache once the last one is gone.
+	 */
+	public void release() {
+		if (--users == 0)
+			VMKernel.execCache.release(image);
+	}
+
 	private void fillMemory(int ppn) {
 		byte[] data = Machine.processor().getMemory();
 		
@@ -84,6 +111,8 @@ public class LazyLoader {
 		public int offset;
 	}
 
+	private ExecImage image;
 	private Coff coff;
 	private CodePage[] pages;
+	private int users = 1;
 }
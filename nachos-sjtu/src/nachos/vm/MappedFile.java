@@ -0,0 +1,62 @@
+package nachos.vm;
+
+import java.util.LinkedList;
+
+import nachos.machine.Machine;
+import nachos.machine.OpenFile;
+import nachos.machine.Processor;
+
+/**
+ * A file mapped into the address space of one or more processes. Every
+ * process mapping the file shares the same frames, and dirty frames are
+ * written back to the file instead of to swap.
+ */
+public class MappedFile extends SharedPages {
+	public MappedFile(Object key) {
+		this.key = key;
+	}
+	
+	public void addHandle(OpenFile file) {
+		handles.add(file);
+	}
+	
+	/**
+	 * @return <tt>true</tt> if no process maps the file any more.
+	 */
+	public boolean removeHandle(OpenFile file) {
+		handles.remove(file);
+		return handles.isEmpty();
+	}
+	
+	public Object getKey() {
+		return key;
+	}
+	
+	protected void fill(int filePage, int ppn) {
+		byte[] memory = Machine.processor().getMemory();
+		int paddr = Processor.makeAddress(ppn, 0);
+		
+		int amount = Math.max(0, file().read(filePage * pageSize, memory, paddr, pageSize));
+		for (int i = paddr + amount; i < paddr + pageSize; i++)
+			memory[i] = 0;
+	}
+	
+	protected void writeBack(int filePage, int ppn) {
+		OpenFile file = file();
+		int pos = filePage * pageSize;
+		int len = Math.min(pageSize, file.length() - pos);
+		if (len > 0)
+			file.write(pos, Machine.processor().getMemory(), Processor.makeAddress(ppn, 0), len);
+		// the file may be a program, which must be read again by the next exec
+		VMKernel.execCache.invalidate(key);
+	}
+	
+	private OpenFile file() {
+		return handles.getFirst();
+	}
+	
+	private static final int pageSize = Processor.pageSize;
+	
+	private Object key;
+	private LinkedList<OpenFile> handles = new LinkedList<OpenFile>();
+}
@@ -1,18 +1,584 @@
 package nachos.vm;
 
+import nachos.machine.Config;
+import nachos.machine.Lib;
+import nachos.machine.Machine;
+import nachos.machine.Processor;
 import nachos.machine.TranslationEntry;
+import nachos.userprog.UserKernel;
+import nachos.vm.SwapManager.SwapPage;
 
+/**
+ * Moves pages between frames and swap. Subclasses choose which page to
+ * replace when no frame is free; the frame bookkeeping, the eviction itself
+ * and the counters are shared. The policy is selected by
+ * <tt>VMKernel.memoryManager</tt>.
+ */
 public abstract class MemoryManager {
 	public MemoryManager() {
+		numPhysPages = Machine.processor().getNumPhysPages();
+		frameState = new byte[numPhysPages];
+		pinCount = new int[numPhysPages];
+		maxPinnedPages = Math.max(1, numPhysPages / 2);
+		maxPrefetch = Math.max(0, Config.getInteger("MemoryManager.prefetchPages", 0));
+		prefetchWindow = maxPrefetch;
 	}
-	
-	protected abstract void removePage(int ppn);
-	
-	protected abstract int nextPage();
-	
-	protected abstract int seekInTLB(int vpn);
-	
-	public abstract TranslationEntry swapIn(PageInfo content, LazyLoader lazyLoader);
-	
-	public abstract void swapOut(int ppn);
+
+	/**
+	 * Pick a frame to evict for <i>incoming</i>. The frame must be
+	 * replaceable, and the policy forgets it, as if by <tt>pageRemoved()</tt>.
+	 */
+	protected abstract int chooseVictim(PageInfo incoming);
+
+	/** Called when a frame has been filled with a page. */
+	protected void pageLoaded(int ppn, PageInfo info) {
+	}
+
+	/** Called when a frame is freed without being evicted. */
+	protected void pageRemoved(int ppn) {
+	}
+
+	/**
+	 * Called when a TLB miss finds its page resident. A page stays referenced
+	 * for as long as it is in the TLB, so policies that count references use
+	 * these instead of the referenced bit.
+	 */
+	protected void pageAccessed(int ppn) {
+	}
+
+	protected void removePage(int ppn) {
+		prefetchDropped(ppn);
+		frameFreed(ppn);
+		pageRemoved(ppn);
+		UserKernel.frameAllocator.free(ppn);
+	}
+
+	protected int nextPage(PageInfo incoming) {
+		int ppn = UserKernel.frameAllocator.allocate();
+		if (VMKernel.pageOutDaemon != null)
+			VMKernel.pageOutDaemon.checkFree();
+		if (ppn != -1)
+			return ppn;
+
+		ppn = chooseVictim(incoming);
+		Lib.assertTrue(isReplaceable(ppn));
+		return ppn;
+	}
+
+	/**
+	 * Evict a page to the free pool, as chosen by the policy. The caller
+	 * holds the VM lock, which is dropped while a dirty page is written to
+	 * swap.
+	 *
+	 * @return <tt>false</tt> if no page could be evicted.
+	 */
+	public boolean reclaimFrame() {
+		// processes switched out keep their TLB entries, and their dirty bits
+		VMKernel.currentTLBManager.flush();
+		boolean any = false;
+		for (int ppn = 0; ppn < numPhysPages && !any; ppn++)
+			any = isReplaceable(ppn);
+		if (!any)
+			return false;
+
+		int ppn = chooseVictim(null);
+		Lib.assertTrue(isReplaceable(ppn));
+		Page page = VMKernel.coreMap[ppn];
+		if (isDirty(ppn) && isPrivate(page)) {
+			// clean first, so a write made while swap is busy dirties it again
+			cleanFrame(ppn);
+			writeCluster(page, ppn, true);
+			if (VMKernel.coreMap[ppn] != page || (frameState[ppn] & frameInUse) == 0)
+				// its process freed it meanwhile
+				return true;
+			if (!isReplaceable(ppn) || isDirty(ppn) || !isPrivate(page)) {
+				// in use again, so keep it, as if it had been faulted back in
+				pageLoaded(ppn, page.info);
+				return true;
+			}
+		}
+		swapOut(ppn);
+		// the entry lives on in swap and must not be reached through the frame
+		VMKernel.coreMap[ppn] = null;
+		frameFreed(ppn);
+		UserKernel.frameAllocator.free(ppn);
+		pagesReclaimed++;
+		return true;
+	}
+
+	/**
+	 * Write up to <i>max</i> dirty private pages to swap, leaving them
+	 * resident but clean, so that evicting them later needs no write. The
+	 * caller holds the VM lock, which is dropped during each write.
+	 */
+	public void cleanPages(int max) {
+		VMKernel.currentTLBManager.flush();
+		int cleaned = 0;
+		for (int i = 0; i < numPhysPages && cleaned < max; i++) {
+			int ppn = cleanHand;
+			cleanHand = (cleanHand + 1) % numPhysPages;
+			if (!isReplaceable(ppn) || !isDirty(ppn))
+				continue;
+			Page page = VMKernel.coreMap[ppn];
+			if (!isPrivate(page))
+				continue;
+
+			// clean first, so a write made while swap is busy dirties it again
+			cleanFrame(ppn);
+			writeCluster(page, ppn, true);
+			pagesPrecleaned++;
+			cleaned++;
+		}
+	}
+
+	/**
+	 * Note that a TLB miss found its page resident.
+	 */
+	public void pageHit(int ppn) {
+		hits++;
+		if ((frameState[ppn] & framePrefetched) != 0) {
+			frameState[ppn] &= ~framePrefetched;
+			prefetchHits++;
+			prefetchWindow = Math.min(maxPrefetch, prefetchWindow + 1);
+		}
+		pageAccessed(ppn);
+	}
+
+	/**
+	 * Return how many pages after a faulting one should be loaded with it.
+	 * The window shrinks while prefetched pages go unused and grows back as
+	 * they are used, up to <tt>MemoryManager.prefetchPages</tt>.
+	 */
+	public int getPrefetchWindow() {
+		return prefetchWindow;
+	}
+
+	/**
+	 * Load <i>info</i> ahead of its first use, but only into a free frame.
+	 *
+	 * @return <tt>false</tt> if there was no free frame.
+	 */
+	public boolean prefetch(PageInfo info, LazyLoader lazyLoader) {
+		int ppn = UserKernel.frameAllocator.allocate();
+		if (ppn == -1)
+			return false;
+
+		TranslationEntry entry = lazyLoader.load(info, ppn);
+
+		VMKernel.invertedPageTable.put(info, ppn);
+		VMKernel.coreMap[ppn] = new Page(info, entry);
+		frameLoaded(ppn, entry.dirty);
+		pageLoaded(ppn, info);
+		prefetched(ppn);
+		return true;
+	}
+
+	/**
+	 * Load page <i>index</i> of <i>backing</i> ahead of its first use by
+	 * <i>info</i>, but only into a free frame. Pages already resident are
+	 * left alone.
+	 *
+	 * @return <tt>false</tt> if there was no free frame.
+	 */
+	public boolean prefetch(PageInfo info, SharedPages backing, int index) {
+		if (backing.getFrame(index) != null)
+			return true;
+		int ppn = UserKernel.frameAllocator.allocate();
+		if (ppn == -1)
+			return false;
+
+		TranslationEntry entry = backing.load(info, index, ppn);
+
+		VMKernel.invertedPageTable.put(info, ppn);
+		VMKernel.coreMap[ppn] = new Page(info, entry, backing, index);
+
+		PageInfo owner = backing.owner(index);
+		if (owner != null) {
+			VMKernel.coreMap[ppn].sharers.add(owner);
+			VMKernel.invertedPageTable.put(owner, ppn);
+		}
+		frameLoaded(ppn, entry.dirty);
+		pageLoaded(ppn, info);
+		prefetched(ppn);
+		return true;
+	}
+
+	private void prefetched(int ppn) {
+		frameState[ppn] |= framePrefetched;
+		pagesPrefetched++;
+	}
+
+	/**
+	 * Note that a frame is leaving memory; if it was prefetched and never
+	 * used, the prefetch was wasted.
+	 */
+	private void prefetchDropped(int ppn) {
+		if ((frameState[ppn] & framePrefetched) != 0) {
+			frameState[ppn] &= ~framePrefetched;
+			prefetchWindow = Math.max(Math.min(1, maxPrefetch), prefetchWindow / 2);
+		}
+	}
+
+	public TranslationEntry swapIn(PageInfo info, LazyLoader lazyLoader) {
+		faults++;
+		VMKernel.currentTLBManager.flush();
+		int ppn = nextPage(info);
+
+		swapOut(ppn);
+
+		TranslationEntry entry = lazyLoader.load(info, ppn);
+
+		VMKernel.invertedPageTable.put(info, ppn);
+		VMKernel.coreMap[ppn] = new Page(info, entry);
+		frameLoaded(ppn, entry.dirty);
+		pageLoaded(ppn, info);
+		return entry;
+	}
+
+	public TranslationEntry swapIn(PageInfo info, SharedPages backing, int index) {
+		Integer shared = backing.getFrame(index);
+		if (shared != null) {
+			VMKernel.coreMap[shared].sharers.add(info);
+			VMKernel.invertedPageTable.put(info, shared);
+			pageHit(shared);
+			return VMKernel.getPageEntry(info);
+		}
+
+		faults++;
+		VMKernel.currentTLBManager.flush();
+		int ppn = nextPage(info);
+
+		swapOut(ppn);
+
+		TranslationEntry entry = backing.load(info, index, ppn);
+
+		VMKernel.invertedPageTable.put(info, ppn);
+		VMKernel.coreMap[ppn] = new Page(info, entry, backing, index);
+
+		PageInfo owner = backing.owner(index);
+		if (owner != null) {
+			VMKernel.coreMap[ppn].sharers.add(owner);
+			VMKernel.invertedPageTable.put(owner, ppn);
+		}
+		frameLoaded(ppn, entry.dirty);
+		pageLoaded(ppn, info);
+		return entry;
+	}
+
+	/**
+	 * Give <i>content</i> a private, writable frame holding <i>data</i>, as
+	 * when a copy-on-write page is written.
+	 */
+	public TranslationEntry copyIn(PageInfo info, byte[] data) {
+		VMKernel.currentTLBManager.flush();
+		int ppn = nextPage(info);
+
+		swapOut(ppn);
+
+		System.arraycopy(data, 0, Machine.processor().getMemory(), Processor.makeAddress(ppn, 0), Processor.pageSize);
+		TranslationEntry entry = new TranslationEntry(info.vpn, ppn, true, false, true, true);
+
+		VMKernel.invertedPageTable.put(info, ppn);
+		VMKernel.coreMap[ppn] = new Page(info, entry);
+		frameLoaded(ppn, true);
+		pageLoaded(ppn, info);
+		return entry;
+	}
+
+	public void swapOut(int ppn) {
+		Page page = VMKernel.coreMap[ppn];
+		if (page != null && page.entry.valid) {
+			prefetchDropped(ppn);
+			page.entry.valid = false;
+			page.copyOnWrite = false;
+			// sharers may have it cached under their own address spaces
+			VMKernel.currentTLBManager.invalidFrame(ppn);
+			VMKernel.invertedPageTable.remove(page.info);
+			for (PageInfo sharer : page.sharers)
+				VMKernel.invertedPageTable.remove(sharer);
+			if (isDirty(ppn))
+				dirtyEvictions++;
+			if (page.backing != null)
+				page.backing.release(page.index, ppn, isDirty(ppn));
+			else if (isDirty(ppn)) {
+				SwapPage swapPage = writeCluster(page, ppn, false);
+				// one copy in swap serves every process sharing the frame
+				for (PageInfo sharer : page.sharers)
+					VMKernel.getSwapManager().shareSwapPage(swapPage, sharer);
+			}
+		}
+	}
+
+	/**
+	 * Write the private page in <i>ppn</i> to swap, in the same transfer as
+	 * the dirty pages next to it in its address space, which stay resident
+	 * but become clean.
+	 *
+	 * <p>
+	 * If <i>dropLock</i> is set, the VM lock is released for the write. The
+	 * pages are pinned meanwhile, so they stay resident, and their swap
+	 * frames are neither written nor handed out by anyone else until it is
+	 * done. A page written to meanwhile is dirty again once the TLB has been
+	 * flushed, as it is before this returns.
+	 *
+	 * @return the swap page of the page in <i>ppn</i>.
+	 */
+	private SwapPage writeCluster(Page page, int ppn, boolean dropLock) {
+		SwapManager swap = VMKernel.getSwapManager();
+		boolean unlocked = dropLock && pin(ppn);
+		int pid = page.info.pid;
+		int first = page.info.vpn, last = page.info.vpn;
+		while (last - first + 1 < swap.getClusterPages() && joinsCluster(pid, last + 1, unlocked))
+			last++;
+		while (last - first + 1 < swap.getClusterPages() && joinsCluster(pid, first - 1, unlocked))
+			first--;
+
+		byte[] memory = Machine.processor().getMemory();
+		int count = last - first + 1;
+		int[] frames = new int[count];
+		SwapPage[] swapPages;
+		byte[] data;
+		int offset;
+		swapWrites++;
+		if (count == 1) {
+			frames[0] = ppn;
+			swapPages = new SwapPage[] { swap.newSwapPage(page) };
+			data = memory;
+			offset = Processor.makeAddress(ppn, 0);
+		} else {
+			Page[] pages = new Page[count];
+			data = new byte[count * Processor.pageSize];
+			offset = 0;
+			for (int i = 0; i < count; ++i) {
+				frames[i] = first + i == page.info.vpn ? ppn
+						: VMKernel.invertedPageTable.get(new PageInfo(pid, first + i));
+				pages[i] = VMKernel.coreMap[frames[i]];
+				System.arraycopy(memory, Processor.makeAddress(frames[i], 0), data, i * Processor.pageSize,
+						Processor.pageSize);
+				if (frames[i] != ppn) {
+					cleanFrame(frames[i]);
+					pagesCleaned++;
+				}
+			}
+			swapPages = swap.newSwapPages(pages, count);
+		}
+
+		int frameNo = swapPages[0].frameNo;
+		if (unlocked) {
+			swap.beginWrite(frameNo, count);
+			VMProcess.lock.release();
+		}
+		Lib.assertTrue(swap.write(frameNo, count, data, offset), "error in writing swap file");
+		if (unlocked) {
+			VMProcess.lock.acquire();
+			swap.endWrite(frameNo, count);
+			for (int i = 0; i < count; ++i)
+				unpin(frames[i]);
+			VMKernel.currentTLBManager.flush();
+		}
+		return swapPages[page.info.vpn - first];
+	}
+
+	/**
+	 * Return whether page <i>vpn</i> of process <i>pid</i> can be written in
+	 * the same transfer as its neighbour, pinning it if <i>pinned</i> is set.
+	 */
+	private boolean joinsCluster(int pid, int vpn, boolean pinned) {
+		if (!isCleanable(pid, vpn))
+			return false;
+		return !pinned || pin(VMKernel.invertedPageTable.get(new PageInfo(pid, vpn)));
+	}
+
+	/**
+	 * Return whether page <i>vpn</i> of process <i>pid</i> is resident in a
+	 * private frame that is dirty and could be written out with its
+	 * neighbours.
+	 */
+	private boolean isCleanable(int pid, int vpn) {
+		Integer ppn = VMKernel.invertedPageTable.get(new PageInfo(pid, vpn));
+		if (ppn == null || !isReplaceable(ppn) || !isDirty(ppn))
+			return false;
+		Page page = VMKernel.coreMap[ppn];
+		return page.entry.valid && page.info.pid == pid && page.info.vpn == vpn && isPrivate(page);
+	}
+
+	/**
+	 * Return whether a page belongs to one process alone and is kept in swap.
+	 */
+	private static boolean isPrivate(Page page) {
+		return page.backing == null && page.sharers.isEmpty() && !page.copyOnWrite;
+	}
+
+	/**
+	 * Note that the page in a frame matches its copy in swap. The TLB must
+	 * have been flushed to the page table.
+	 */
+	private void cleanFrame(int ppn) {
+		frameState[ppn] &= ~frameDirty;
+		VMKernel.coreMap[ppn].entry.dirty = false;
+		Processor processor = Machine.processor();
+		for (int i = 0; i < processor.getTLBSize(); i++) {
+			int flags = processor.readTLBFlags(i);
+			if ((flags & Processor.tlbValid) != 0 && (flags & Processor.tlbDirty) != 0
+					&& processor.readTLBPPN(i) == ppn)
+				processor.setTLBFlags(i, flags & ~Processor.tlbDirty);
+		}
+	}
+
+	/**
+	 * Read <i>info</i> from swap into <i>ppn</i>. The pages after it in its
+	 * address space that follow it in swap, and are not resident, come in
+	 * the same transfer, as far as there are free frames to hold them.
+	 */
+	public void readSwap(PageInfo info, SwapPage swapPage, int ppn) {
+		SwapManager swap = VMKernel.getSwapManager();
+		byte[] memory = Machine.processor().getMemory();
+		int[] frames = new int[swap.getClusterPages()];
+		SwapPage[] swapPages = new SwapPage[frames.length];
+		frames[0] = ppn;
+		swapPages[0] = swapPage;
+
+		int count = 1;
+		while (count < frames.length) {
+			PageInfo next = new PageInfo(info.pid, info.vpn + count);
+			SwapPage nextPage = swap.getSwapPage(next);
+			if (nextPage == null || nextPage.frameNo != swapPage.frameNo + count
+					|| VMKernel.invertedPageTable.containsKey(next))
+				break;
+			int frame = UserKernel.frameAllocator.allocate();
+			if (frame == -1)
+				break;
+			frames[count] = frame;
+			swapPages[count++] = nextPage;
+		}
+
+		if (count == 1) {
+			Lib.assertTrue(swap.read(swapPage.frameNo, memory, Processor.makeAddress(ppn, 0)),
+					"swap file read error");
+			return;
+		}
+
+		byte[] buffer = new byte[count * Processor.pageSize];
+		Lib.assertTrue(swap.read(swapPage.frameNo, count, buffer, 0), "swap file read error");
+		for (int i = 0; i < count; ++i)
+			System.arraycopy(buffer, i * Processor.pageSize, memory, Processor.makeAddress(frames[i], 0),
+					Processor.pageSize);
+
+		for (int i = 1; i < count; ++i) {
+			TranslationEntry entry = LazyLoader.swapEntry(swapPages[i], frames[i]);
+			VMKernel.invertedPageTable.put(swapPages[i].info, frames[i]);
+			VMKernel.coreMap[frames[i]] = new Page(swapPages[i].info, entry);
+			frameLoaded(frames[i], false);
+			pageLoaded(frames[i], swapPages[i].info);
+			prefetched(frames[i]);
+		}
+	}
+
+	/**
+	 * Keep a frame from being chosen by <tt>nextPage()</tt>. At most half of
+	 * physical memory can be pinned at once, so page faults can always make
+	 * progress.
+	 *
+	 * @return <tt>true</tt> if the frame was pinned.
+	 */
+	public boolean pin(int ppn) {
+		if (pinCount[ppn] == 0) {
+			if (numPinnedPages >= maxPinnedPages)
+				return false;
+			numPinnedPages++;
+			frameState[ppn] |= framePinned;
+		}
+		pinCount[ppn]++;
+		return true;
+	}
+
+	public void unpin(int ppn) {
+		if (--pinCount[ppn] == 0) {
+			numPinnedPages--;
+			frameState[ppn] &= ~framePinned;
+		}
+	}
+
+	protected boolean isPinned(int ppn) {
+		return (frameState[ppn] & framePinned) != 0;
+	}
+
+	/**
+	 * Note that the TLB saw a frame accessed, and perhaps written.
+	 */
+	public void noteAccess(int ppn, boolean used, boolean dirty) {
+		if (used)
+			frameState[ppn] |= frameReferenced;
+		if (dirty)
+			frameState[ppn] |= frameDirty;
+	}
+
+	/**
+	 * Note that a frame now holds a page, which becomes a candidate for
+	 * replacement.
+	 */
+	protected void frameLoaded(int ppn, boolean dirty) {
+		frameState[ppn] = (byte) ((frameState[ppn] & framePinned) | frameInUse | (dirty ? frameDirty : 0));
+	}
+
+	/**
+	 * Note that a frame no longer holds a page the policy should consider.
+	 */
+	protected void frameFreed(int ppn) {
+		frameState[ppn] &= framePinned;
+	}
+
+	/**
+	 * Return whether a frame holds a page that may be replaced.
+	 */
+	protected boolean isReplaceable(int ppn) {
+		return (frameState[ppn] & (frameInUse | framePinned)) == frameInUse;
+	}
+
+	protected boolean isDirty(int ppn) {
+		return (frameState[ppn] & frameDirty) != 0;
+	}
+
+	/**
+	 * Clear the referenced bit of a frame.
+	 *
+	 * @return whether it was set.
+	 */
+	protected boolean clearReferenced(int ppn) {
+		boolean referenced = (frameState[ppn] & frameReferenced) != 0;
+		frameState[ppn] &= ~frameReferenced;
+		return referenced;
+	}
+
+	public String statistics() {
+		return getClass().getSimpleName() + ": hits " + hits + ", faults " + faults
+				+ ", dirty evictions " + dirtyEvictions + ", swap writes " + swapWrites
+				+ ", pages cleaned " + pagesCleaned + ", pages prefetched " + pagesPrefetched
+				+ ", prefetched pages used " + prefetchHits + ", prefetch window " + prefetchWindow
+				+ ", pages reclaimed " + pagesReclaimed + ", pages precleaned " + pagesPrecleaned;
+	}
+
+	protected static final byte frameInUse = 1, frameReferenced = 2, frameDirty = 4, framePinned = 8,
+			framePrefetched = 16;
+
+	protected int numPhysPages;
+	// per-frame state bits
+	protected byte[] frameState;
+
+	// TLB misses served from memory, and pages brought in
+	protected long hits = 0, faults = 0;
+	protected long dirtyEvictions = 0, swapWrites = 0;
+	// neighbours written out with an evicted page
+	protected long pagesCleaned = 0;
+	// pages loaded before they were needed, and how many of them were used
+	protected long pagesPrefetched = 0, prefetchHits = 0;
+	// work done by the page-out daemon
+	protected long pagesReclaimed = 0, pagesPrecleaned = 0;
+
+	private int[] pinCount;
+	private int numPinnedPages = 0;
+	private int maxPinnedPages;
+
+	private int maxPrefetch, prefetchWindow;
+	private int cleanHand = 0;
 }
@@ -1,13 +1,55 @@
 package nachos.vm;
 
+import java.util.LinkedList;
+
 import nachos.machine.TranslationEntry;
 
 public class Page {
 	public Page(PageInfo info, TranslationEntry entry) {
+		this(info, entry, null, 0);
+	}
+	
+	public Page(PageInfo info, TranslationEntry entry, SharedPages backing, int index) {
 		this.info = info;
 		this.entry = entry;
+		this.backing = backing;
+		this.index = index;
 	}
 
 	PageInfo info;
 	TranslationEntry entry;
+	
+	// mapped file or shared segment holding the page, null for private pages
+	SharedPages backing;
+	int index;
+	// other processes mapping the same frame
+	LinkedList<PageInfo> sharers = new LinkedList<PageInfo>();
+	// shared after fork, entry is read-only until the first write
+	boolean copyOnWrite = false;
+	
+	int refCount() {
+		return 1 + sharers.size();
+	}
+	
+	/**
+	 * Drop one process's reference to this frame. A copy-on-write frame left
+	 * with a single user becomes writable again.
+	 * 
+	 * @return <tt>true</tt> if that was the last reference.
+	 */
+	boolean removeUser(PageInfo user) {
+		if (sharers.isEmpty())
+			return true;
+		
+		if (info.equals(user))
+			info = sharers.removeFirst();
+		else
+			sharers.remove(user);
+		
+		if (sharers.isEmpty() && copyOnWrite) {
+			copyOnWrite = false;
+			entry.readOnly = false;
+		}
+		return false;
+	}
 }
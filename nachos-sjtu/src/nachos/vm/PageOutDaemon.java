@@ -0,0 +1,86 @@
+package nachos.vm;
+
+import nachos.machine.Config;
+import nachos.machine.Machine;
+import nachos.threads.Condition2;
+import nachos.threads.KThread;
+import nachos.threads.Semaphore;
+import nachos.userprog.UserKernel;
+
+/**
+ * A kernel thread that keeps frames free, so that a page fault rarely waits
+ * for a victim to be written to swap. A fault that leaves fewer than
+ * <tt>PageOutDaemon.lowWatermark</tt> frames free wakes it; it then evicts
+ * pages until <tt>PageOutDaemon.highWatermark</tt> are free, and writes up
+ * to as many dirty pages to swap ahead of time so that evicting them later
+ * costs no write. The VM lock is dropped while it writes to swap, so faults
+ * taken meanwhile wait for at most one victim of their own.
+ */
+public class PageOutDaemon {
+	/**
+	 * Allocate a page-out daemon and start its thread. The watermarks are
+	 * capped at half of physical memory.
+	 */
+	public PageOutDaemon() {
+		// the rest of memory must still hold a working set
+		int maxFree = Math.max(1, Machine.processor().getNumPhysPages() / 2);
+		highWatermark = Math.min(maxFree, Config.getInteger("PageOutDaemon.highWatermark"));
+		lowWatermark = Math.min(highWatermark, Config.getInteger("PageOutDaemon.lowWatermark", 1));
+
+		new KThread(new Runnable() {
+			public void run() {
+				pageOut();
+			}
+		}).setName("page-out daemon").fork();
+	}
+
+	/**
+	 * Wake the daemon if too few frames are free.
+	 */
+	public void checkFree() {
+		if (!awake && UserKernel.frameAllocator.getNumFree() < lowWatermark) {
+			awake = true;
+			wakeup.V();
+		}
+	}
+
+	/**
+	 * Stop the daemon, waiting for the pages it is writing, as before swap is
+	 * closed.
+	 */
+	public void stop() {
+		VMProcess.lock.acquire();
+		stopped = true;
+		while (busy)
+			idle.sleep();
+		VMProcess.lock.release();
+	}
+
+	private void pageOut() {
+		while (true) {
+			wakeup.P();
+
+			// the lock is held only to choose and finish each page
+			VMProcess.lock.acquire();
+			if (!stopped) {
+				busy = true;
+				while (!stopped && UserKernel.frameAllocator.getNumFree() < highWatermark
+						&& VMKernel.memoryManager.reclaimFrame())
+					;
+				if (!stopped)
+					VMKernel.memoryManager.cleanPages(highWatermark);
+				busy = false;
+				idle.wakeAll();
+			}
+			awake = false;
+			VMProcess.lock.release();
+		}
+	}
+
+	private int lowWatermark, highWatermark;
+	private boolean awake = false;
+	// stopped for good, and between waking and going back to sleep
+	private boolean stopped = false, busy = false;
+	private Condition2 idle = new Condition2(VMProcess.lock);
+	private Semaphore wakeup = new Semaphore(0);
+}
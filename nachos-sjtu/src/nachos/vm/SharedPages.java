@@ -0,0 +1,52 @@
+package nachos.vm;
+
+import java.util.Hashtable;
+
+import nachos.machine.TranslationEntry;
+
+/**
+ * Pages that several processes can map at once. While one of them is
+ * resident, every process mapping it uses the same frame.
+ */
+public abstract class SharedPages {
+	public Integer getFrame(int index) {
+		return frames.get(index);
+	}
+	
+	public TranslationEntry load(PageInfo info, int index, int ppn) {
+		fill(index, ppn);
+		frames.put(index, ppn);
+		return new TranslationEntry(info.vpn, ppn, true, isReadOnly(index), false, false);
+	}
+	
+	/**
+	 * Return the kernel's own reference to page <i>index</i>, which keeps its
+	 * frame mapped after the last process unmaps it, or <tt>null</tt> if the
+	 * frame goes when its last process does.
+	 */
+	public PageInfo owner(int index) {
+		return null;
+	}
+	
+	protected boolean isReadOnly(int index) {
+		return false;
+	}
+	
+	/**
+	 * Called when page <i>index</i> leaves frame <i>ppn</i>, either because
+	 * the frame is evicted or because its last user unmapped it.
+	 */
+	public void release(int index, int ppn, boolean dirty) {
+		frames.remove(index);
+		if (dirty)
+			writeBack(index, ppn);
+	}
+	
+	/** Read the contents of page <i>index</i> into frame <i>ppn</i>. */
+	protected abstract void fill(int index, int ppn);
+	
+	/** Save the contents of frame <i>ppn</i> as page <i>index</i>. */
+	protected abstract void writeBack(int index, int ppn);
+	
+	private Hashtable<Integer, Integer> frames = new Hashtable<Integer, Integer>();
+}
@@ -0,0 +1,97 @@
+package nachos.vm;
+
+import nachos.machine.Lib;
+import nachos.machine.Machine;
+import nachos.machine.Processor;
+import nachos.machine.TranslationEntry;
+import nachos.vm.SwapManager.SwapPage;
+
+/**
+ * A shared memory segment. Its pages start out zero-filled and are kept in
+ * swap while no frame holds them, under a page identity of their own, so
+ * the segment outlives the processes attached to it until it is removed.
+ */
+public class SharedSegment extends SharedPages {
+	public SharedSegment(int id, int key, int numPages) {
+		this.id = id;
+		this.key = key;
+		this.numPages = numPages;
+	}
+	
+	public int getId() {
+		return id;
+	}
+	
+	public int getKey() {
+		return key;
+	}
+	
+	public int getNumPages() {
+		return numPages;
+	}
+	
+	public boolean isRemoved() {
+		return removed;
+	}
+	
+	public void attach() {
+		attached++;
+	}
+	
+	/**
+	 * @return <tt>true</tt> if the segment has been removed and this was the
+	 *         last process attached, so it can be destroyed.
+	 */
+	public boolean detach() {
+		return --attached == 0 && removed;
+	}
+	
+	/**
+	 * Mark the segment for removal. Nobody can attach it any more.
+	 * 
+	 * @return <tt>true</tt> if no process is attached, so it can be destroyed.
+	 */
+	public boolean remove() {
+		removed = true;
+		return attached == 0;
+	}
+	
+	/**
+	 * Free the swap space of the segment. Its frames must already be released.
+	 */
+	public void destroy() {
+		for (int i = 0; i < numPages; ++i)
+			VMKernel.getSwapManager().deleteSwapPage(swapInfo(i));
+	}
+	
+	protected void fill(int index, int ppn) {
+		byte[] memory = Machine.processor().getMemory();
+		int paddr = Processor.makeAddress(ppn, 0);
+		
+		SwapPage swapPage = VMKernel.getSwapManager().getSwapPage(swapInfo(index));
+		if (swapPage != null) {
+			Lib.assertTrue(VMKernel.getSwapManager().read(swapPage.frameNo, memory, paddr),
+					"swap file read error");
+		} else {
+			for (int i = paddr; i < paddr + Processor.pageSize; i++)
+				memory[i] = 0;
+		}
+	}
+	
+	protected void writeBack(int index, int ppn) {
+		PageInfo info = swapInfo(index);
+		TranslationEntry entry = new TranslationEntry(index, ppn, false, false, false, false);
+		SwapPage swapPage = VMKernel.getSwapManager().newSwapPage(new Page(info, entry));
+		Lib.assertTrue(VMKernel.getSwapManager().write(swapPage.frameNo, Machine.processor().getMemory(),
+				Processor.makeAddress(ppn, 0)), "error in writing swap file");
+	}
+	
+	// segment pages live in swap under negative pids, which no process has
+	private PageInfo swapInfo(int index) {
+		return new PageInfo(-1 - id, index);
+	}
+	
+	private int id, key, numPages;
+	private int attached = 0;
+	private boolean removed = false;
+}
@@ -1,80 +1,312 @@
 package nachos.vm;
 
+import java.util.BitSet;
 import java.util.Hashtable;
-import java.util.LinkedList;
 
+import nachos.machine.Config;
+import nachos.machine.Lib;
 import nachos.machine.OpenFile;
+import nachos.machine.Machine;
 import nachos.machine.Processor;
+import nachos.machine.Stats;
 import nachos.machine.TranslationEntry;
 import nachos.threads.ThreadedKernel;
 
+/**
+ * Keeps pages in a swap file, or in a fixed area set aside by the kernel. The
+ * space is divided into page-sized frames, tracked by a bitmap; a file grows
+ * <tt>SwapManager.extentPages</tt> frames at a time when none are free. A
+ * fixed area that fills up overflows into a file, whose frames are numbered
+ * after those of the area. A page goes next to the neighbouring pages of its
+ * process where there is room, so that a run of pages can be moved in one
+ * transfer. Usage and I/O are counted in the machine's <tt>Stats</tt>.
+ */
 public class SwapManager {
-	public SwapManager() {
-		size = 0;
-		file = ThreadedKernel.fileSystem.open(swapFileName, true);
-		byte[] buf = new byte[Processor.pageSize * numSwapPage];
-		file.write(buf, 0, buf.length);
+	/**
+	 * Allocate a new swap manager.
+	 *
+	 * @param area a fixed area to swap to, such as a reserved run of disk
+	 *             sectors, or <tt>null</tt> to swap to a file.
+	 */
+	public SwapManager(OpenFile area) {
+		extentPages = Math.max(1, Config.getInteger("SwapManager.extentPages", 32));
+		clusterPages = Math.max(1, Config.getInteger("SwapManager.clusterPages", 8));
+		if (area != null) {
+			this.area = area;
+			areaFrames = area.length() / Processor.pageSize;
+			numFrames = areaFrames;
+			stats.numSwapFrames = numFrames;
+		} else {
+			numFrames = 0;
+			grow();
+		}
 	}
-	
+
 	public boolean write(int frameNo, byte[] data, int offset) {
-		return (file.write(frameNo * Processor.pageSize, data, offset, Processor.pageSize)
-				== Processor.pageSize);
+		return write(frameNo, 1, data, offset);
 	}
-	
+
 	public boolean read(int framNo, byte[] data, int offset) {
-		return (file.read(framNo*Processor.pageSize, data, offset, Processor.pageSize)
-				== Processor.pageSize);
+		return read(framNo, 1, data, offset);
 	}
-	
-	public int newFrameNo() {
-		if (freeFrames.isEmpty()) return size++;
-		Integer result = freeFrames.removeFirst();
-		return result;
+
+	/**
+	 * Write <i>count</i> pages from <i>data</i> to consecutive frames, starting
+	 * at <i>frameNo</i>, in a single transfer.
+	 */
+	public boolean write(int frameNo, int count, byte[] data, int offset) {
+		stats.numSwapWrites++;
+		stats.numSwapPagesWritten += count;
+		return transfer(true, frameNo, count, data, offset);
 	}
-	
+
+	/**
+	 * Read <i>count</i> consecutive frames, starting at <i>frameNo</i>, into
+	 * <i>data</i> in a single transfer.
+	 */
+	public boolean read(int frameNo, int count, byte[] data, int offset) {
+		stats.numSwapReads++;
+		stats.numSwapPagesRead += count;
+		return transfer(false, frameNo, count, data, offset);
+	}
+
+	/**
+	 * Move frames to or from where they are kept, the fixed area holding the
+	 * first <tt>areaFrames</tt> and the file the rest.
+	 */
+	private boolean transfer(boolean write, int frameNo, int count, byte[] data, int offset) {
+		int inArea = Math.max(0, Math.min(count, areaFrames - frameNo));
+		if (inArea > 0 && !transfer(area, write, frameNo, inArea, data, offset))
+			return false;
+		return inArea == count || transfer(file, write, frameNo + inArea - areaFrames, count - inArea, data,
+				offset + inArea * Processor.pageSize);
+	}
+
+	private static boolean transfer(OpenFile file, boolean write, int frameNo, int count, byte[] data,
+			int offset) {
+		int pos = frameNo * Processor.pageSize, length = count * Processor.pageSize;
+		if (write)
+			return file.write(pos, data, offset, length) == length;
+		return file.read(pos, data, offset, length) == length;
+	}
+
+	/**
+	 * Return the most pages that should be moved in one transfer.
+	 */
+	public int getClusterPages() {
+		return clusterPages;
+	}
+
 	public SwapPage newSwapPage(Page page) {
 		SwapPage swapPage = swapPageTable.get(page.info);
 		if (swapPage == null) {
-			swapPage = new SwapPage(page.info, page.entry, newFrameNo());
+			swapPage = new SwapPage(page.info, page.entry, newFrameNo(page.info));
 			swapPageTable.put(page.info, swapPage);
+		} else if (sharedFrames.containsKey(swapPage.frameNo) || writing.get(swapPage.frameNo)) {
+			// other processes still read the old contents, or a write to the
+			// frame is under way
+			releaseFrame(swapPage.frameNo);
+			swapPage.frameNo = newFrameNo(page.info);
 		}
 		return swapPage;
 	}
-	
+
+	/**
+	 * Give each of <i>pages</i>, neighbours in one address space and in
+	 * order, a swap frame, such that the frames are consecutive.
+	 *
+	 * @return the swap pages, in the same order.
+	 */
+	public SwapPage[] newSwapPages(Page[] pages, int count) {
+		SwapPage[] swapPages = new SwapPage[count];
+		boolean consecutive = true;
+		for (int i = 0; i < count; ++i) {
+			swapPages[i] = swapPageTable.get(pages[i].info);
+			consecutive = consecutive && swapPages[i] != null
+					&& !sharedFrames.containsKey(swapPages[i].frameNo) && !writing.get(swapPages[i].frameNo)
+					&& swapPages[i].frameNo == swapPages[0].frameNo + i;
+		}
+		if (consecutive)
+			return swapPages;
+
+		for (int i = 0; i < count; ++i)
+			if (swapPages[i] != null)
+				releaseFrame(swapPages[i].frameNo);
+
+		int first = allocate(count);
+		for (int i = 0; i < count; ++i) {
+			if (swapPages[i] == null) {
+				swapPages[i] = new SwapPage(pages[i].info, pages[i].entry, first + i);
+				swapPageTable.put(pages[i].info, swapPages[i]);
+			} else
+				swapPages[i].frameNo = first + i;
+		}
+		return swapPages;
+	}
+
+	/**
+	 * Let <i>info</i> use the swap frame of <i>swapPage</i> as well, as when a
+	 * forked child shares its parent's pages. The frame is copied on the next
+	 * <tt>newSwapPage()</tt> of either user.
+	 */
+	public SwapPage shareSwapPage(SwapPage swapPage, PageInfo info) {
+		SwapPage shared = swapPageTable.get(info);
+		if (shared == null) {
+			shared = new SwapPage(info, new TranslationEntry(swapPage.entry), swapPage.frameNo);
+			shared.entry.vpn = info.vpn;
+			swapPageTable.put(info, shared);
+		} else {
+			if (shared.frameNo == swapPage.frameNo)
+				return shared;
+			releaseFrame(shared.frameNo);
+			shared.frameNo = swapPage.frameNo;
+		}
+
+		Integer users = sharedFrames.get(swapPage.frameNo);
+		sharedFrames.put(swapPage.frameNo, users == null ? 2 : users + 1);
+		return shared;
+	}
+
 	public SwapPage getSwapPage(PageInfo pageContent) {
 		return swapPageTable.get(pageContent);
 	}
-	
+
 	public boolean deleteSwapPage(PageInfo pageContent) {
-		SwapPage swapPage = getSwapPage(pageContent);
+		SwapPage swapPage = swapPageTable.remove(pageContent);
 		if (swapPage == null) return false;
-		freeFrames.add(swapPage.frameNo);
+		releaseFrame(swapPage.frameNo);
 		return true;
 	}
-	
+
+	/**
+	 * Pick a frame for <i>info</i>, after that of the page before it or before
+	 * that of the page after it if either is free.
+	 */
+	private int newFrameNo(PageInfo info) {
+		SwapPage before = swapPageTable.get(new PageInfo(info.pid, info.vpn - 1));
+		if (before != null && before.frameNo + 1 < numFrames && !used.get(before.frameNo + 1))
+			return take(before.frameNo + 1, 1);
+		SwapPage after = swapPageTable.get(new PageInfo(info.pid, info.vpn + 1));
+		if (after != null && after.frameNo > 0 && !used.get(after.frameNo - 1))
+			return take(after.frameNo - 1, 1);
+		return allocate(1);
+	}
+
+	/**
+	 * Find <i>count</i> consecutive free frames, first fit, growing the file
+	 * if there are none.
+	 */
+	private int allocate(int count) {
+		while (true) {
+			int first = used.nextClearBit(0);
+			while (first + count <= numFrames) {
+				int next = used.nextSetBit(first);
+				if (next == -1 || next >= first + count)
+					return take(first, count);
+				first = used.nextClearBit(next);
+			}
+			grow();
+		}
+	}
+
+	private int take(int first, int count) {
+		used.set(first, first + count);
+		stats.numSwapFramesUsed += count;
+		if (stats.numSwapFramesUsed > stats.maxSwapFramesUsed)
+			stats.maxSwapFramesUsed = stats.numSwapFramesUsed;
+		return first;
+	}
+
+	/**
+	 * Add an extent to the end of the file, creating it if the fixed area has
+	 * just filled up. Only its last byte is written; each frame is written
+	 * before it is ever read.
+	 */
+	private void grow() {
+		if (file == null) {
+			file = ThreadedKernel.fileSystem.open(swapFileName, true);
+			Lib.assertTrue(file != null, "cannot open swap file");
+		}
+		numFrames += extentPages;
+		stats.numSwapFrames = numFrames;
+		file.write((numFrames - areaFrames) * Processor.pageSize - 1, new byte[1], 0, 1);
+	}
+
+	private void releaseFrame(int frameNo) {
+		Integer users = sharedFrames.remove(frameNo);
+		if (users == null) {
+			if (writing.get(frameNo))
+				freed.set(frameNo);
+			else {
+				used.clear(frameNo);
+				stats.numSwapFramesUsed--;
+			}
+		} else if (users > 2)
+			sharedFrames.put(frameNo, users - 1);
+	}
+
+	/**
+	 * Note that <i>count</i> frames from <i>frameNo</i> are being written
+	 * without the VM lock held. Until <tt>endWrite()</tt>, no other page is
+	 * written to them, and those freed are not handed out again.
+	 */
+	public void beginWrite(int frameNo, int count) {
+		writing.set(frameNo, frameNo + count);
+	}
+
+	public void endWrite(int frameNo, int count) {
+		writing.clear(frameNo, frameNo + count);
+		for (int i = freed.nextSetBit(frameNo); i != -1 && i < frameNo + count; i = freed.nextSetBit(i + 1)) {
+			freed.clear(i);
+			used.clear(i);
+			stats.numSwapFramesUsed--;
+		}
+	}
+
 	public void close() {
-		file.close();
-		ThreadedKernel.fileSystem.remove(swapFileName);
+		// no page may be on its way to swap
+		if (VMKernel.pageOutDaemon != null)
+			VMKernel.pageOutDaemon.stop();
+		if (area != null)
+			area.close();
+		if (file != null) {
+			file.close();
+			ThreadedKernel.fileSystem.remove(swapFileName);
+		}
 	}
-	
+
+	/**
+	 * Return the swap file, or <tt>null</tt> if every page has fit in the
+	 * fixed area.
+	 */
 	public OpenFile getSwapFile() {
 		return file;
 	}
-	
+
 	class SwapPage extends Page {
 		public SwapPage(PageInfo item, TranslationEntry entry, int frameNo) {
 			super(item, entry);
 			this.frameNo = frameNo;
 		}
-		
+
 		int frameNo;
 	}
-	
-	public static final int numSwapPage = 32;
+
 	public static final String swapFileName = "SWAP";
-	
-	private int size;
-	private OpenFile file;
-	private LinkedList<Integer> freeFrames = new LinkedList<Integer>();
+
+	private int extentPages, clusterPages;
+	// the fixed area, if any, and the frames it holds
+	private OpenFile area = null;
+	private int areaFrames = 0;
+	// frames in the area and the file, and which of them hold a page
+	private int numFrames;
+	private BitSet used = new BitSet();
+	// frames being written without the VM lock, and those of them freed since
+	private BitSet writing = new BitSet(), freed = new BitSet();
+	private OpenFile file = null;
 	private Hashtable<PageInfo, SwapPage> swapPageTable = new Hashtable<PageInfo, SwapPage>();
+	// user counts of frames used by more than one page
+	private Hashtable<Integer, Integer> sharedFrames = new Hashtable<Integer, Integer>();
+
+	private Stats stats = Machine.stats();
 }
@@ -2,8 +2,14 @@ package nachos.vm;
 
 import nachos.machine.Lib;
 import nachos.machine.Machine;
+import nachos.machine.Processor;
 import nachos.machine.TranslationEntry;
 
+/**
+ * Loads and drops TLB entries, and passes their used and dirty bits on to
+ * the page table. It works on the TLB in place, through the processor's
+ * primitive accessors, so a TLB miss or a flush allocates nothing.
+ */
 public class TLBManager {
 	public void clear() {
 		for (int i = 0; i < Machine.processor().getTLBSize(); ++i) {
@@ -12,21 +18,36 @@ public class TLBManager {
 		}
 	}
 
-	public void addEntry(TranslationEntry entry) {
+	/**
+	 * Drop the entries of one address space, as when it goes away.
+	 */
+	public void clear(int asid) {
+		Processor processor = Machine.processor();
+		for (int i = 0; i < processor.getTLBSize(); ++i)
+			if (processor.readTLBASID(i) == asid) {
+				TLBtoPageTable(i);
+				invalid(i);
+			}
+	}
+
+	public void addEntry(int asid, TranslationEntry entry) {
+		Processor processor = Machine.processor();
 		int index = -1;
 
-		for (int i = 0; i < Machine.processor().getTLBSize(); ++i)
-			if (!Machine.processor().readTLBEntry(i).valid) {
+		for (int i = 0; i < processor.getTLBSize(); ++i)
+			if ((processor.readTLBFlags(i) & Processor.tlbValid) == 0) {
 				index = i;
 				break;
 			}
 
 		if (index == -1)
-			index = Lib.random(Machine.processor().getTLBSize());
+			index = Lib.random(processor.getTLBSize());
 
 		TLBtoPageTable(index);
 
-		Machine.processor().writeTLBEntry(index, entry);
+		int flags = (entry.valid ? Processor.tlbValid : 0) | (entry.readOnly ? Processor.tlbReadOnly : 0)
+				| (entry.used ? Processor.tlbUsed : 0) | (entry.dirty ? Processor.tlbDirty : 0);
+		processor.writeTLBEntry(index, asid, entry.vpn, entry.ppn, flags);
 	}
 
 	public void flush() {
@@ -35,31 +56,65 @@ public class TLBManager {
 	}
 
 	public void TLBtoPageTable(int index) {
-		TranslationEntry entry = Machine.processor().readTLBEntry(index);
-		if (entry.valid)
-			VMKernel.coreMap[entry.ppn].entry = entry;
+		Processor processor = Machine.processor();
+		int flags = processor.readTLBFlags(index);
+		if ((flags & Processor.tlbValid) != 0) {
+			int ppn = processor.readTLBPPN(index);
+			boolean used = (flags & Processor.tlbUsed) != 0;
+			boolean dirty = (flags & Processor.tlbDirty) != 0;
+			// the frame may be shared, so merge the bits rather than replace
+			TranslationEntry pageEntry = VMKernel.coreMap[ppn].entry;
+			pageEntry.dirty = pageEntry.dirty || dirty;
+			VMKernel.memoryManager.noteAccess(ppn, used, dirty);
+			// entries outlive context switches, so only report new accesses
+			if (used)
+				processor.setTLBFlags(index, flags & ~Processor.tlbUsed);
+		}
 	}
 
 	public void invalid(int index) {
-		TranslationEntry entry = Machine.processor().readTLBEntry(index);
-		if (!entry.valid)
-			return;
-		entry.valid = false;
-		Machine.processor().writeTLBEntry(index, entry);
+		int flags = Machine.processor().readTLBFlags(index);
+		if ((flags & Processor.tlbValid) != 0)
+			Machine.processor().setTLBFlags(index, flags & ~Processor.tlbValid);
 	}
 
-	public TranslationEntry find(int vpn, boolean isWrite) {
-		for (int i = 0; i < Machine.processor().getTLBSize(); ++i) {
-			TranslationEntry entry = Machine.processor().readTLBEntry(i);
-			if (entry.valid && entry.vpn == vpn) {
-				if (entry.readOnly && isWrite)
-					return null;
-				entry.dirty = entry.dirty || isWrite;
-				entry.used = true;
-				Machine.processor().writeTLBEntry(i, entry);
-				return entry;
-			}
-		}
-		return null;
+	/**
+	 * Drop the entry for <i>vpn</i> in an address space, if there is one.
+	 */
+	public void invalid(int asid, int vpn) {
+		int index = Machine.processor().probeTLB(asid, vpn);
+		if (index != -1)
+			invalid(index);
+	}
+
+	/**
+	 * Drop every entry for a frame, in whatever address space, as when the
+	 * frame is given to another page.
+	 */
+	public void invalidFrame(int ppn) {
+		Processor processor = Machine.processor();
+		for (int i = 0; i < processor.getTLBSize(); ++i)
+			if ((processor.readTLBFlags(i) & Processor.tlbValid) != 0 && processor.readTLBPPN(i) == ppn)
+				invalid(i);
+	}
+
+	/**
+	 * Look <i>vpn</i> up in the TLB for the kernel, marking it used, and
+	 * dirty if <i>isWrite</i>.
+	 *
+	 * @return the frame it maps to, or -1 if it is not in the TLB or is
+	 *         read-only and <i>isWrite</i> is set.
+	 */
+	public int find(int asid, int vpn, boolean isWrite) {
+		Processor processor = Machine.processor();
+		int index = processor.probeTLB(asid, vpn);
+		if (index == -1)
+			return -1;
+
+		int flags = processor.readTLBFlags(index);
+		if ((flags & Processor.tlbReadOnly) != 0 && isWrite)
+			return -1;
+		processor.setTLBFlags(index, flags | Processor.tlbUsed | (isWrite ? Processor.tlbDirty : 0));
+		return processor.readTLBPPN(index);
 	}
 }
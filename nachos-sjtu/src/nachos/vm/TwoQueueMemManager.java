@@ -0,0 +1,92 @@
+package nachos.vm;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+import nachos.machine.Lib;
+
+/**
+ * 2Q replacement. A page brought in for the first time joins a FIFO queue,
+ * <tt>A1in</tt>; pages pushed out of it are remembered in a ghost queue,
+ * <tt>A1out</tt>, and a page faulted back in while remembered is taken to be
+ * hot and joins an LRU queue, <tt>Am</tt>. Victims come from <tt>A1in</tt>
+ * while it holds more than a quarter of memory, and otherwise from the LRU end
+ * of <tt>Am</tt>, so pages touched once do not push out the working set.
+ */
+public class TwoQueueMemManager extends MemoryManager {
+	public TwoQueueMemManager() {
+		super();
+
+		a1in = new FrameList(numPhysPages);
+		am = new FrameList(numPhysPages);
+		maxIn = Math.max(1, numPhysPages / 4);
+		maxOut = Math.max(1, numPhysPages / 2);
+	}
+
+	@Override
+	protected int chooseVictim(PageInfo incoming) {
+		if (a1in.size() > maxIn) {
+			int ppn = oldestReplaceable(a1in);
+			if (ppn != -1) {
+				evictFromIn(ppn);
+				return ppn;
+			}
+		}
+
+		int ppn = oldestReplaceable(am);
+		if (ppn != -1) {
+			am.remove(ppn);
+			return ppn;
+		}
+
+		ppn = oldestReplaceable(a1in);
+		Lib.assertTrue(ppn != -1);
+		evictFromIn(ppn);
+		return ppn;
+	}
+
+	@Override
+	protected void pageLoaded(int ppn, PageInfo info) {
+		if (a1out.remove(info))
+			am.addLast(ppn);
+		else
+			a1in.addLast(ppn);
+
+		// trimmed only now, so the page evicted to make room for this one
+		// cannot push the incoming page's own ghost out first
+		while (a1out.size() > maxOut) {
+			Iterator<PageInfo> oldest = a1out.iterator();
+			oldest.next();
+			oldest.remove();
+		}
+	}
+
+	@Override
+	protected void pageAccessed(int ppn) {
+		if (am.contains(ppn))
+			am.addLast(ppn);
+	}
+
+	@Override
+	protected void pageRemoved(int ppn) {
+		a1in.remove(ppn);
+		am.remove(ppn);
+	}
+
+	private void evictFromIn(int ppn) {
+		a1in.remove(ppn);
+		a1out.add(VMKernel.coreMap[ppn].info);
+	}
+
+	private int oldestReplaceable(FrameList list) {
+		int ppn = list.first();
+		while (ppn != -1 && !isReplaceable(ppn))
+			ppn = list.next(ppn);
+		return ppn;
+	}
+
+	private FrameList a1in, am;
+	// pages recently pushed out of a1in, oldest first
+	private LinkedHashSet<PageInfo> a1out = new LinkedHashSet<PageInfo>();
+	private int maxIn, maxOut;
+}
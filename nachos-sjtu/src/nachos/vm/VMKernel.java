@@ -1,9 +1,12 @@
 package nachos.vm;
 
+import java.util.BitSet;
 import java.util.Hashtable;
 
+import nachos.machine.Config;
 import nachos.machine.Lib;
 import nachos.machine.Machine;
+import nachos.machine.OpenFile;
 import nachos.machine.TranslationEntry;
 import nachos.userprog.UserKernel;
 
@@ -26,7 +29,11 @@ public class VMKernel extends UserKernel {
 		
 		coreMap = new Page[Machine.processor().getNumPhysPages()];
 		currentTLBManager = new TLBManager();
-		memoryManager = new ClockPagingMemManager();
+		numASIDs = Math.max(2, Config.getInteger("VMKernel.numASIDs", 256));
+		memoryManager = (MemoryManager) Lib.constructObject(Config.getString(
+				"VMKernel.memoryManager", "nachos.vm.ClockPagingMemManager"));
+		if (Config.getInteger("PageOutDaemon.highWatermark", 0) > 0)
+			pageOutDaemon = new PageOutDaemon();
 	}
 
 	/**
@@ -50,6 +57,8 @@ public class VMKernel extends UserKernel {
 		Lib.debug(dbgVM, "Virtual Memory Terminating");		
 		getSwapManager().close();
 		Lib.debug(dbgVM, "Page faults count: " + VMProcess.numPageFaults);
+		Lib.debug(dbgVM, execCache.statistics());
+		Lib.debug(dbgVM, memoryManager.statistics());
 		
 		super.terminate();
 	}
@@ -59,19 +68,68 @@ public class VMKernel extends UserKernel {
 		if (ppn == null) return null;
 		Page res = coreMap[ppn];
 		if (res == null || !res.entry.valid) return null;
+		if (res.entry.vpn != info.vpn) {
+			// a shared frame, mapped at another address by this process
+			TranslationEntry entry = new TranslationEntry(res.entry);
+			entry.vpn = info.vpn;
+			return entry;
+		}
 		return res.entry;
 	}
 	
+	/**
+	 * Give an address space an identifier to tag its TLB entries with. ASID 0
+	 * is never handed out. When every identifier is in use the TLB is
+	 * flushed and a new generation begins; processes holding an identifier
+	 * from an older generation must ask for a new one before using it again.
+	 */
+	public static int allocateASID() {
+		int asid = usedASIDs.nextClearBit(1);
+		if (asid >= numASIDs) {
+			currentTLBManager.clear();
+			// the running process picks up its new identifier on its next miss
+			Machine.processor().setASID(0);
+			usedASIDs.clear();
+			asidGeneration++;
+			asid = 1;
+		}
+		usedASIDs.set(asid);
+		return asid;
+	}
+
+	/**
+	 * Return an identifier given out by <tt>allocateASID()</tt> in
+	 * <i>generation</i>. Its TLB entries must already be gone.
+	 */
+	public static void releaseASID(int asid, int generation) {
+		if (generation == asidGeneration)
+			usedASIDs.clear(asid);
+	}
+
+	public static int getASIDGeneration() {
+		return asidGeneration;
+	}
+
 	public static SwapManager getSwapManager() {
-		if (swapManager == null) swapManager = new SwapManager();
+		if (swapManager == null) swapManager = new SwapManager(swapArea);
 		return swapManager;
 	}
 	
 	private static final char dbgVM = 'v';
 	
+	protected static ExecCache execCache = new ExecCache();
+	protected static Hashtable<Object, MappedFile> mappedFiles = new Hashtable<Object, MappedFile>();
+	protected static Hashtable<Integer, SharedSegment> sharedSegments = new Hashtable<Integer, SharedSegment>();
+	protected static int nextSegmentId = 0;
 	protected static Hashtable<PageInfo, Integer> invertedPageTable = new Hashtable<PageInfo, Integer>();
 	protected static Page[] coreMap;
 	protected static TLBManager currentTLBManager;
+	protected static int numASIDs;
+	private static BitSet usedASIDs = new BitSet();
+	private static int asidGeneration = 0;
 	protected static MemoryManager memoryManager;
+	protected static PageOutDaemon pageOutDaemon = null;
 	protected static SwapManager swapManager;
+	// a raw area set aside for swap, used instead of a swap file if not null
+	protected static OpenFile swapArea = null;
 }
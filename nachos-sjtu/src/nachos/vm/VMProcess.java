@@ -1,9 +1,18 @@
 package nachos.vm;
 
+import java.io.EOFException;
+import java.util.LinkedList;
+
+import nachos.machine.Coff;
+import nachos.machine.Lib;
 import nachos.machine.Machine;
+import nachos.machine.OpenFile;
 import nachos.machine.Processor;
 import nachos.machine.TranslationEntry;
+import nachos.vm.SwapManager.SwapPage;
 import nachos.threads.Lock;
+import nachos.userprog.UThread;
+import nachos.userprog.UserKernel;
 import nachos.userprog.UserProcess;
 
 /**
@@ -22,7 +31,7 @@ public class VMProcess extends UserProcess {
 	 * Called by <tt>UThread.saveState()</tt>.
 	 */
 	public void saveState() {
-		VMKernel.currentTLBManager.clear();
+		// TLB entries are tagged with this process's ASID, so they can stay
 	}
 
 	/**
@@ -30,7 +39,7 @@ public class VMProcess extends UserProcess {
 	 * <tt>UThread.restoreState()</tt>.
 	 */
 	public void restoreState() {
-		//super.restoreState();
+		Machine.processor().setASID(getASID());
 	}
 
 	/**
@@ -40,31 +49,522 @@ public class VMProcess extends UserProcess {
 	 * @return <tt>true</tt> if successful.
 	 */
 	protected boolean loadSections() {
-		lazyLoader = new LazyLoader(coff);
+		lazyLoader = new LazyLoader(image);
 		
 		return true;
 	}
+	
+	/**
+	 * Take the executable from the exec cache, so its headers are parsed and
+	 * its text is read only once however many processes run it.
+	 */
+	protected Coff openExecutable(OpenFile executable) throws EOFException {
+		lock.acquire();
+		try {
+			image = VMKernel.execCache.acquire(mappingKey(executable), executable);
+		} finally {
+			lock.release();
+		}
+		return image.getCoff();
+	}
+	
+	protected void closeExecutable() {
+		lock.acquire();
+		VMKernel.execCache.release(image);
+		lock.release();
+	}
 
 	/**
-	 * Release any resources allocated by <tt>loadSections()</tt>.
+	 * Release any resources allocated by <tt>loadSections()</tt>. Frames still
+	 * shared with a forked process are left to it.
 	 */
 	protected void unloadSections() {
-		coff.close();
+		VMKernel.currentTLBManager.clear(getASID());
+		VMKernel.releaseASID(asid, asidGeneration);
 		
-		VMKernel.currentTLBManager.clear();
+		lock.acquire();
 		
 		for (int i = 0; i < numPages; ++i) {
 			PageInfo info = new PageInfo(PID, i);
 			Integer ppn = VMKernel.invertedPageTable.remove(info);
-			if (ppn != null) {
+			if (ppn != null && VMKernel.coreMap[ppn].removeUser(info)) {
 				VMKernel.memoryManager.removePage(ppn);
 				VMKernel.coreMap[ppn].entry.valid = false;
 			}
 			
 			VMKernel.getSwapManager().deleteSwapPage(info);
 		}
+		
+		// release after the frames, so an evicted image finds them unmapped
+		lazyLoader.release();
+		lock.release();
+	}
+
+	/**
+	 * Initialize the registers of a forked child from the snapshot taken by
+	 * its parent, or as for a new program otherwise.
+	 */
+	public void initRegisters() {
+		if (forkRegisters == null) {
+			super.initRegisters();
+			return;
+		}
+		
+		for (int i = 0; i < Processor.numUserRegisters; i++)
+			Machine.processor().writeRegister(i, forkRegisters[i]);
+		forkRegisters = null;
 	}
 
+	/**
+	 * Handle the memory-sharing syscalls, passing anything else on to
+	 * <tt>UserProcess</tt>.
+	 * 
+	 * <table>
+	 * <tr>
+	 * <td>syscall#</td>
+	 * <td>syscall prototype</td>
+	 * </tr>
+	 * <tr>
+	 * <td>10</td>
+	 * <td><tt>int  mmap(int fd, char *address);</tt></td>
+	 * </tr>
+	 * <tr>
+	 * <td>24</td>
+	 * <td><tt>int  munmap(char *address);</tt></td>
+	 * </tr>
+	 * <tr>
+	 * <td>25</td>
+	 * <td><tt>int  fork();</tt></td>
+	 * </tr>
+	 * <tr>
+	 * <td>26</td>
+	 * <td><tt>int  shmget(int key, int size);</tt></td>
+	 * </tr>
+	 * <tr>
+	 * <td>27</td>
+	 * <td><tt>int  shmat(int id, char *address);</tt></td>
+	 * </tr>
+	 * <tr>
+	 * <td>28</td>
+	 * <td><tt>int  shmdt(char *address);</tt></td>
+	 * </tr>
+	 * <tr>
+	 * <td>29</td>
+	 * <td><tt>int  shmrm(int id);</tt></td>
+	 * </tr>
+	 * </table>
+	 */
+	public int handleSyscall(int syscall, int a0, int a1, int a2, int a3) {
+		switch (syscall) {
+		case syscallMmap:
+			return handleMmap(a0, a1);
+		case syscallMunmap:
+			return handleMunmap(a0);
+		case syscallFork:
+			return handleFork();
+		case syscallShmget:
+			return handleShmget(a0, a1);
+		case syscallShmat:
+			return handleShmat(a0, a1);
+		case syscallShmdt:
+			return handleShmdt(a0);
+		case syscallShmrm:
+			return handleShmrm(a0);
+		default:
+			return super.handleSyscall(syscall, a0, a1, a2, a3);
+		}
+	}
+	
+	/**
+	 * Map the whole file open on <i>fd</i> at the page-aligned <i>address</i>.
+	 * Pages are faulted in on first touch, and processes mapping the same file
+	 * share its frames. The file cannot be read or written through <i>fd</i>
+	 * until it is unmapped.
+	 * 
+	 * @return the length of the file, or -1 on error.
+	 */
+	protected int handleMmap(int fd, int address) {
+		OpenFile file = fileManager.get(fd);
+		
+		if (file == null || mappingOfFile(fd) != null) {
+			Lib.debug(dbgVM, "Invalid file descriptor for mmap");
+			return -1;
+		}
+		
+		int length = file.length();
+		if (length < 0 || address <= 0 || Processor.offsetFromAddress(address) != 0
+				|| (long) address + length > Integer.MAX_VALUE) {
+			Lib.debug(dbgVM, "Invalid mmap region");
+			return -1;
+		}
+		
+		int firstVPN = Processor.pageFromAddress(address);
+		int numMappedPages = (length + pageSize - 1) / pageSize;
+		if (!regionFree(firstVPN, numMappedPages))
+			return -1;
+		
+		Object key = mappingKey(file);
+		MappedFile mappedFile = VMKernel.mappedFiles.get(key);
+		if (mappedFile == null) {
+			mappedFile = new MappedFile(key);
+			VMKernel.mappedFiles.put(key, mappedFile);
+		}
+		mappedFile.addHandle(file);
+		
+		mappings.add(new Mapping(fd, file, mappedFile, firstVPN, numMappedPages));
+		return length;
+	}
+	
+	/**
+	 * Return the shared memory segment with the specified key, creating it if
+	 * there is none. A new segment is zero-filled.
+	 * 
+	 * @return the id of the segment, or -1 on error.
+	 */
+	protected int handleShmget(int key, int size) {
+		if (size <= 0 || size > maxSegmentPages * pageSize) {
+			Lib.debug(dbgVM, "Invalid shared segment size " + size);
+			return -1;
+		}
+		
+		int numSegmentPages = (size + pageSize - 1) / pageSize;
+		for (SharedSegment segment : VMKernel.sharedSegments.values())
+			if (segment.getKey() == key && !segment.isRemoved())
+				return numSegmentPages <= segment.getNumPages() ? segment.getId() : -1;
+		
+		SharedSegment segment = new SharedSegment(VMKernel.nextSegmentId++, key, numSegmentPages);
+		VMKernel.sharedSegments.put(segment.getId(), segment);
+		return segment.getId();
+	}
+	
+	/**
+	 * Map the shared memory segment <i>id</i> at the page-aligned
+	 * <i>address</i>.
+	 * 
+	 * @return <i>address</i>, or -1 on error.
+	 */
+	protected int handleShmat(int id, int address) {
+		SharedSegment segment = VMKernel.sharedSegments.get(id);
+		
+		if (segment == null || segment.isRemoved()) {
+			Lib.debug(dbgVM, "No shared segment " + id);
+			return -1;
+		}
+		
+		if (address <= 0 || Processor.offsetFromAddress(address) != 0
+				|| (long) address + segment.getNumPages() * pageSize > Integer.MAX_VALUE) {
+			Lib.debug(dbgVM, "Invalid shmat address");
+			return -1;
+		}
+		
+		int firstVPN = Processor.pageFromAddress(address);
+		if (!regionFree(firstVPN, segment.getNumPages()))
+			return -1;
+		
+		segment.attach();
+		mappings.add(new Mapping(-1, null, segment, firstVPN, segment.getNumPages()));
+		return address;
+	}
+	
+	protected int handleShmdt(int address) {
+		Mapping mapping = mappingAt(Processor.pageFromAddress(address));
+		
+		if (mapping == null || mapping.file != null
+				|| Processor.makeAddress(mapping.firstVPN, 0) != address) {
+			Lib.debug(dbgVM, "No shared segment at " + address);
+			return -1;
+		}
+		
+		unmap(mapping);
+		return 0;
+	}
+	
+	/**
+	 * Remove shared memory segment <i>id</i>. It is destroyed once the last
+	 * process detaches it.
+	 */
+	protected int handleShmrm(int id) {
+		SharedSegment segment = VMKernel.sharedSegments.get(id);
+		
+		if (segment == null || segment.isRemoved()) {
+			Lib.debug(dbgVM, "No shared segment " + id);
+			return -1;
+		}
+		
+		if (segment.remove())
+			destroySegment(segment);
+		return 0;
+	}
+	
+	private static void destroySegment(SharedSegment segment) {
+		VMKernel.sharedSegments.remove(segment.getId());
+		segment.destroy();
+	}
+	
+	/**
+	 * Create a child running a copy of this process. Resident frames are
+	 * shared, writable ones read-only until either process writes them, and
+	 * pages in swap share their swap frame. The child starts with the console
+	 * and this process's pipes open, but without its other files, file
+	 * mappings or shared segments.
+	 * 
+	 * @return the PID of the child, or -1 on error.
+	 */
+	protected int handleFork() {
+		VMProcess child = (VMProcess) newUserProcess();
+		
+		lock.acquire();
+		// drop writable TLB entries and collect their dirty bits
+		VMKernel.currentTLBManager.clear();
+		
+		for (int vpn = 0; vpn < numPages; ++vpn) {
+			PageInfo info = new PageInfo(PID, vpn);
+			PageInfo childInfo = new PageInfo(child.PID, vpn);
+			
+			SwapPage swapPage = VMKernel.getSwapManager().getSwapPage(info);
+			if (swapPage != null)
+				VMKernel.getSwapManager().shareSwapPage(swapPage, childInfo);
+			
+			Integer ppn = VMKernel.invertedPageTable.get(info);
+			if (ppn != null) {
+				Page page = VMKernel.coreMap[ppn];
+				if (!page.entry.readOnly) {
+					page.copyOnWrite = true;
+					page.entry.readOnly = true;
+				}
+				page.sharers.add(childInfo);
+				VMKernel.invertedPageTable.put(childInfo, ppn);
+			}
+		}
+		lock.release();
+		
+		child.coff = coff;
+		child.image = image;
+		child.lazyLoader = lazyLoader.share();
+		child.numPages = numPages;
+		child.argc = argc;
+		child.argv = argv;
+		
+		Processor processor = Machine.processor();
+		child.forkRegisters = new int[Processor.numUserRegisters];
+		for (int i = 0; i < Processor.numUserRegisters; i++)
+			child.forkRegisters[i] = processor.readRegister(i);
+		// the child returns 0 from the syscall
+		child.forkRegisters[Processor.regV0] = 0;
+		child.forkRegisters[Processor.regPC] = child.forkRegisters[Processor.regNextPC];
+		child.forkRegisters[Processor.regNextPC] += 4;
+		
+		childProcessList.add(child.PID);
+		inheritPipes(child);
+		++activeProcesses;
+		new UThread(child).setName("fork " + child.PID).fork();
+		
+		return child.PID;
+	}
+	
+	/**
+	 * Give this process a private copy of a copy-on-write page it is about to
+	 * write.
+	 * 
+	 * @return <tt>false</tt> if the page is not a resident copy-on-write page.
+	 */
+	private boolean breakCopyOnWrite(int vpn) {
+		lock.acquire();
+		VMKernel.currentTLBManager.flush();
+		
+		PageInfo info = new PageInfo(PID, vpn);
+		Integer ppn = VMKernel.invertedPageTable.get(info);
+		if (ppn == null || !VMKernel.coreMap[ppn].copyOnWrite) {
+			lock.release();
+			return false;
+		}
+		
+		VMKernel.currentTLBManager.invalid(getASID(), vpn);
+		
+		Page page = VMKernel.coreMap[ppn];
+		if (page.refCount() == 1) {
+			page.copyOnWrite = false;
+			page.entry.readOnly = false;
+		} else {
+			// copy first, since finding a frame for the copy may evict this one
+			byte[] data = new byte[pageSize];
+			System.arraycopy(Machine.processor().getMemory(), Processor.makeAddress(ppn, 0), data, 0, pageSize);
+			page.removeUser(info);
+			VMKernel.invertedPageTable.remove(info);
+			VMKernel.memoryManager.copyIn(info, data);
+		}
+		
+		lock.release();
+		return true;
+	}
+	
+	protected int handleMunmap(int address) {
+		Mapping mapping = mappingAt(Processor.pageFromAddress(address));
+		
+		if (mapping == null || mapping.file == null
+				|| Processor.makeAddress(mapping.firstVPN, 0) != address) {
+			Lib.debug(dbgVM, "No mapping at " + address);
+			return -1;
+		}
+		
+		unmap(mapping);
+		return 0;
+	}
+	
+	protected int handleRead(int fd, int buffer, int size) {
+		return mappingOfFile(fd) == null ? super.handleRead(fd, buffer, size) : -1;
+	}
+	
+	protected int handleCreate(int name) {
+		int fd = super.handleCreate(name);
+		if (fd != -1)
+			invalidateImage(fd);
+		return fd;
+	}
+	
+	protected int handleWrite(int fd, int buffer, int size) {
+		if (mappingOfFile(fd) != null)
+			return -1;
+		invalidateImage(fd);
+		return super.handleWrite(fd, buffer, size);
+	}
+	
+	protected int handleReadv(int fd, int iov, int iovcnt) {
+		return mappingOfFile(fd) == null ? super.handleReadv(fd, iov, iovcnt) : -1;
+	}
+	
+	protected int handleWritev(int fd, int iov, int iovcnt) {
+		if (mappingOfFile(fd) != null)
+			return -1;
+		invalidateImage(fd);
+		return super.handleWritev(fd, iov, iovcnt);
+	}
+	
+	protected int handleUnlink(int name) {
+		String fileName = readVirtualMemoryString(name, maxFilenameLength);
+		if (fileName != null)
+			invalidateImage(fileName);
+		return super.handleUnlink(name);
+	}
+	
+	// a program whose file changes must be read again by the next exec
+	private void invalidateImage(int fd) {
+		OpenFile file = fileManager.get(fd);
+		if (file == null)
+			return;
+		
+		lock.acquire();
+		VMKernel.execCache.invalidate(mappingKey(file));
+		lock.release();
+	}
+	
+	/**
+	 * Forget the cached image of the program at <i>path</i>, if any, before
+	 * the file is removed: its identity may be given to a new file.
+	 */
+	protected void invalidateImage(String path) {
+		OpenFile file = UserKernel.fileSystem.open(path, false);
+		if (file == null)
+			return;
+		
+		lock.acquire();
+		VMKernel.execCache.invalidate(mappingKey(file));
+		lock.release();
+		file.close();
+	}
+	
+	protected int handleClose(int fd) {
+		Mapping mapping = mappingOfFile(fd);
+		if (mapping != null)
+			unmap(mapping);
+		
+		return super.handleClose(fd);
+	}
+	
+	protected int handleExit(int status) {
+		stopWorkers();
+		while (!mappings.isEmpty())
+			unmap(mappings.getFirst());
+		
+		return super.handleExit(status);
+	}
+	
+	/**
+	 * Return the object identifying the file underneath <i>file</i>, so that
+	 * processes mapping the same file share frames.
+	 */
+	protected Object mappingKey(OpenFile file) {
+		return file.getName();
+	}
+	
+	private Mapping mappingOfFile(int fd) {
+		for (Mapping mapping : mappings)
+			if (mapping.file != null && mapping.fd == fd)
+				return mapping;
+		return null;
+	}
+	
+	/**
+	 * Check that a new mapping can go at the specified pages: above the
+	 * program and clear of all other mappings.
+	 */
+	private boolean regionFree(int firstVPN, int count) {
+		if (firstVPN < numPages) {
+			Lib.debug(dbgVM, "mapping overlaps the program");
+			return false;
+		}
+		for (Mapping mapping : mappings)
+			if (firstVPN < mapping.firstVPN + mapping.numPages
+					&& mapping.firstVPN < firstVPN + count) {
+				Lib.debug(dbgVM, "mapping overlaps another mapping");
+				return false;
+			}
+		return true;
+	}
+	
+	private Mapping mappingAt(int vpn) {
+		for (Mapping mapping : mappings)
+			if (vpn >= mapping.firstVPN && vpn < mapping.firstVPN + mapping.numPages)
+				return mapping;
+		return null;
+	}
+	
+	/**
+	 * Remove a mapping, releasing frames no other process maps. Dirty ones go
+	 * back to the file, or to swap for a shared segment.
+	 */
+	private void unmap(Mapping mapping) {
+		lock.acquire();
+		VMKernel.currentTLBManager.flush();
+		
+		for (int i = 0; i < mapping.numPages; ++i) {
+			PageInfo info = new PageInfo(PID, mapping.firstVPN + i);
+			Integer ppn = VMKernel.invertedPageTable.remove(info);
+			if (ppn == null)
+				continue;
+			
+			VMKernel.currentTLBManager.invalid(getASID(), info.vpn);
+			
+			Page page = VMKernel.coreMap[ppn];
+			if (page.removeUser(info)) {
+				page.entry.valid = false;
+				mapping.backing.release(i, ppn, page.entry.dirty);
+				VMKernel.memoryManager.removePage(ppn);
+			}
+		}
+		
+		mappings.remove(mapping);
+		if (mapping.file != null) {
+			MappedFile mappedFile = (MappedFile) mapping.backing;
+			if (mappedFile.removeHandle(mapping.file))
+				VMKernel.mappedFiles.remove(mappedFile.getKey());
+		} else if (((SharedSegment) mapping.backing).detach()) {
+			destroySegment((SharedSegment) mapping.backing);
+		}
+		
+		lock.release();
+	}
+	
 	/**
 	 * Handle a user exception. Called by <tt>UserKernel.exceptionHandler()</tt>
 	 * . The <i>cause</i> argument identifies which exception occurred; see the
@@ -79,6 +579,13 @@ public class VMProcess extends UserProcess {
 		switch (cause) {
 		case Processor.exceptionTLBMiss:
 			handleTLBMissException(Processor.pageFromAddress(processor.readRegister(Processor.regBadVAddr)));
+			// the ASID may have been recycled while the page was brought in
+			processor.setASID(getASID());
+			break;
+		case Processor.exceptionReadOnly:
+			// the faulting store is retried against the private copy
+			if (!breakCopyOnWrite(Processor.pageFromAddress(processor.readRegister(Processor.regBadVAddr))))
+				super.handleException(cause);
 			break;
 		default:
 			super.handleException(cause);
@@ -91,35 +598,124 @@ public class VMProcess extends UserProcess {
 		if (entry == null) {
 			entry = handlePageFault(vpn);
 			if (entry == null) handleExit(-1);
-		}
+		} else
+			VMKernel.memoryManager.pageHit(entry.ppn);
 		
-		VMKernel.currentTLBManager.addEntry(entry);
+		VMKernel.currentTLBManager.addEntry(getASID(), entry);
 	}
 	
 	private TranslationEntry handlePageFault(int vpn) {
 		lock.acquire();
 		numPageFaults++;
-		TranslationEntry res = VMKernel.memoryManager.swapIn(new PageInfo(PID, vpn), lazyLoader);
+		PageInfo info = new PageInfo(PID, vpn);
+		Mapping mapping = mappingAt(vpn);
+		TranslationEntry res;
+		if (mapping != null)
+			res = VMKernel.memoryManager.swapIn(info, mapping.backing, vpn - mapping.firstVPN);
+		else if (image.isShared(vpn))
+			res = VMKernel.memoryManager.swapIn(info, image, vpn);
+		else
+			res = VMKernel.memoryManager.swapIn(info, lazyLoader);
+		if (res != null)
+			faultAhead(vpn);
 		lock.release();
 		return res;
 	}
 	
+	/**
+	 * Load the pages after <i>vpn</i> that come from the executable or from
+	 * swap into free frames, up to the memory manager's prefetch window.
+	 * Stops at the first page that is resident, mapped from elsewhere or
+	 * would be zero-filled, or when no frame is free.
+	 */
+	private void faultAhead(int vpn) {
+		int last = Math.min(numPages - 1, vpn + VMKernel.memoryManager.getPrefetchWindow());
+		for (int next = vpn + 1; next <= last; ++next) {
+			PageInfo info = new PageInfo(PID, next);
+			if (VMKernel.invertedPageTable.containsKey(info) || mappingAt(next) != null)
+				return;
+			
+			boolean loaded;
+			if (image.isShared(next))
+				loaded = VMKernel.memoryManager.prefetch(info, image, next);
+			else if (lazyLoader.isCodePage(next) || VMKernel.getSwapManager().getSwapPage(info) != null)
+				loaded = VMKernel.memoryManager.prefetch(info, lazyLoader);
+			else
+				return;
+			if (!loaded)
+				return;
+		}
+	}
+	
 	protected TranslationEntry getTranslationEntry(int vpn, boolean isWrite) {
-		TranslationEntry res = VMKernel.currentTLBManager.find(vpn, isWrite);
-		if (res == null) {
+		int ppn = VMKernel.currentTLBManager.find(getASID(), vpn, isWrite);
+		if (ppn == -1) {
+			if (isWrite)
+				breakCopyOnWrite(vpn);
 			handleTLBMissException(vpn);
-			res = VMKernel.currentTLBManager.find(vpn, isWrite);
+			ppn = VMKernel.currentTLBManager.find(getASID(), vpn, isWrite);
 		}
 		
-		return res;
+		// only the frame number is used, and the frame's own entry has it
+		return ppn == -1 ? null : VMKernel.coreMap[ppn].entry;
 	}
 
+	/**
+	 * Return the identifier this process's TLB entries are tagged with,
+	 * taking a new one if it has none from the current generation. The
+	 * kernel also uses it when reaching into another process's memory, as
+	 * when a parent writes its child's arguments.
+	 */
+	private int getASID() {
+		if (asidGeneration != VMKernel.getASIDGeneration()) {
+			asid = VMKernel.allocateASID();
+			asidGeneration = VMKernel.getASIDGeneration();
+		}
+		return asid;
+	}
+
+	protected boolean pinPage(int ppn) {
+		return VMKernel.memoryManager.pin(ppn);
+	}
+	
+	protected void unpinPage(int ppn) {
+		VMKernel.memoryManager.unpin(ppn);
+	}
+
+	// a mapped file (file != null) or an attached shared segment
+	private class Mapping {
+		Mapping(int fd, OpenFile file, SharedPages backing, int firstVPN, int numPages) {
+			this.fd = fd;
+			this.file = file;
+			this.backing = backing;
+			this.firstVPN = firstVPN;
+			this.numPages = numPages;
+		}
+		
+		int fd;
+		OpenFile file;
+		SharedPages backing;
+		int firstVPN, numPages;
+	}
+
+	protected static final int syscallMmap = 10, syscallMunmap = 24, syscallFork = 25,
+			syscallShmget = 26, syscallShmat = 27, syscallShmdt = 28, syscallShmrm = 29;
+	
+	/** The largest shared memory segment, in pages. */
+	protected static final int maxSegmentPages = 64;
+
 	private static final int pageSize = Processor.pageSize;
 	protected static final char dbgProcess = 'a';
 	private static final char dbgVM = 'v';
 	
 	public static int numPageFaults = 0;
 	
+	private ExecImage image;
 	private LazyLoader lazyLoader;
-	private static Lock lock = new Lock();
+	private LinkedList<Mapping> mappings = new LinkedList<Mapping>();
+	private int[] forkRegisters = null;
+	// none until first needed
+	private int asid, asidGeneration = -1;
+	// serializes paging; the page-out daemon holds it too
+	static Lock lock = new Lock();
 }
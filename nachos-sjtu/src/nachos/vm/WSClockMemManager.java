@@ -0,0 +1,55 @@
+package nachos.vm;
+
+import nachos.machine.Config;
+
+/**
+ * WSClock replacement. Each frame remembers when its page was last seen
+ * referenced, in page faults; a page not referenced for more than
+ * <tt>WSClockMemManager.window</tt> faults has left the working set of its
+ * process. The hand takes the first clean page outside the working set, and
+ * failing that the page left unreferenced longest, so dirty pages are
+ * written to swap only when no clean one will do.
+ */
+public class WSClockMemManager extends MemoryManager {
+	public WSClockMemManager() {
+		super();
+
+		lastUse = new long[numPhysPages];
+		window = Config.getInteger("WSClockMemManager.window", numPhysPages);
+	}
+
+	@Override
+	protected int chooseVictim(PageInfo incoming) {
+		int best = -1;
+
+		// the first sweep clears every referenced bit, so the second finds
+		// an unreferenced frame
+		for (int i = 0; i < 2 * numPhysPages; i++) {
+			int ppn = hand;
+			hand = (hand + 1) % numPhysPages;
+			if (!isReplaceable(ppn))
+				continue;
+
+			if (clearReferenced(ppn)) {
+				lastUse[ppn] = faults;
+				continue;
+			}
+
+			if (faults - lastUse[ppn] > window && !isDirty(ppn))
+				return ppn;
+			if (best == -1 || lastUse[ppn] < lastUse[best])
+				best = ppn;
+		}
+
+		return best;
+	}
+
+	@Override
+	protected void pageLoaded(int ppn, PageInfo info) {
+		lastUse[ppn] = faults;
+	}
+
+	private long[] lastUse;
+	private int window;
+	private int hand = 0;
+}
@@ -0,0 +1,57 @@
+/* spawn_bench.c
+ *	Measure the cost of exec(), join() and exit(). Runs N children of each
+ *	program, first one at a time and then all at once, and has
+ *	nachos.ag.SpawnGrader report each run. N is the first argument, 8 by
+ *	default, at most MAX_CHILDREN.
+ */
+
+#include "spawngrader.h"
+
+#define MAX_CHILDREN 16
+
+char *programs[] = { "halt.coff", "echo.coff", "matmult.coff" };
+
+#define NUM_PROGRAMS (sizeof(programs) / sizeof(programs[0]))
+
+int pids[MAX_CHILDREN];
+
+void sequential(char *program, int n) {
+  int i, status;
+
+  benchBegin(program, 0, n);
+  for (i = 0; i < n; i++) {
+    int pid = exec(program, 1, &program);
+    if (pid > 0)
+      join(pid, &status);
+  }
+  benchEnd();
+}
+
+void parallel(char *program, int n) {
+  int i, status;
+
+  benchBegin(program, 1, n);
+  for (i = 0; i < n; i++)
+    pids[i] = exec(program, 1, &program);
+  for (i = 0; i < n; i++)
+    if (pids[i] > 0)
+      join(pids[i], &status);
+  benchEnd();
+}
+
+int main(int argc, char **argv) {
+  int n = 8, i;
+
+  if (argc > 1)
+    n = atoi(argv[1]);
+  if (n > MAX_CHILDREN)
+    n = MAX_CHILDREN;
+
+  for (i = 0; i < NUM_PROGRAMS; i++) {
+    sequential(programs[i], n);
+    parallel(programs[i], n);
+  }
+
+  done();
+  return 0;
+}
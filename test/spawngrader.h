@@ -0,0 +1,25 @@
+#ifndef SPAWNGRADER_H_
+#define SPAWNGRADER_H_
+//
+// Helpers for the spawn benchmark, run by nachos.ag.SpawnGrader
+//
+#include "coffgrader.h"
+
+int ag4(int a0, int a1, int a2, int a3);
+
+#define ACTION_BENCH_BEGIN 30
+#define ACTION_BENCH_END   31
+
+// Start a run of n children of program, one at a time or all at once
+inline
+void benchBegin(char* program, int parallel, int n) {
+  ag4(ACTION_BENCH_BEGIN, (int) program, parallel, n);
+}
+
+// Finish the run and have the grader report its costs
+inline
+void benchEnd() {
+  ag1(ACTION_BENCH_END);
+}
+
+#endif
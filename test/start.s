@@ -76,3 +76,18 @@ name:				; \
 	SYSCALLSTUB(stat, syscallStat)
 	SYSCALLSTUB(link, syscallLink)
 	SYSCALLSTUB(symlink, syscallSymlink)
+	SYSCALLSTUB(readv, syscallReadv)
+	SYSCALLSTUB(writev, syscallWritev)
+	SYSCALLSTUB(munmap, syscallMunmap)
+	SYSCALLSTUB(fork, syscallFork)
+	SYSCALLSTUB(shmget, syscallShmget)
+	SYSCALLSTUB(shmat, syscallShmat)
+	SYSCALLSTUB(shmdt, syscallShmdt)
+	SYSCALLSTUB(shmrm, syscallShmrm)
+	SYSCALLSTUB(ring_setup, syscallRingSetup)
+	SYSCALLSTUB(ring_enter, syscallRingEnter)
+	SYSCALLSTUB(aio_read, syscallAioRead)
+	SYSCALLSTUB(aio_write, syscallAioWrite)
+	SYSCALLSTUB(aio_poll, syscallAioPoll)
+	SYSCALLSTUB(aio_wait, syscallAioWait)
+	SYSCALLSTUB(pipe, syscallPipe)
@@ -34,6 +34,21 @@
 #define syscallStat	      	19
 #define syscallLink               20
 #define syscallSymlink		21
+#define syscallReadv		22
+#define syscallWritev		23
+#define syscallMunmap		24
+#define syscallFork		25
+#define syscallShmget		26
+#define syscallShmat		27
+#define syscallShmdt		28
+#define syscallShmrm		29
+#define syscallRingSetup	30
+#define syscallRingEnter	31
+#define syscallAioRead		32
+#define syscallAioWrite		33
+#define syscallAioPoll		34
+#define syscallAioWait		35
+#define syscallPipe		36
 
 
 /* Don't want the assembler to see C code, but start.s includes syscall.h. */
@@ -97,7 +112,9 @@ void exit(int status);
  * Execute the program stored in the specified file, with the specified
  * arguments, in a new child process. The child process has a new unique
  * process ID, and starts with stdin opened as file descriptor 0, and stdout
- * opened as file descriptor 1.
+ * opened as file descriptor 1. It also inherits the ends of the parent's
+ * pipes, under the same descriptors; one at descriptor 0 or 1 takes the
+ * place of stdin or stdout.
  *
  * file is a null-terminated string that specifies the name of the file
  * containing the executable. Note that this string must include the ".coff"
@@ -115,6 +132,18 @@ void exit(int status);
  */
 int exec(char *file, int argc, char *argv[]);
 
+/**
+ * Create a new process running a copy of the current one. Memory is shared
+ * copy-on-write. The child starts with fdStandardInput, fdStandardOutput
+ * and the ends of the parent's pipes open, under the same descriptors, but
+ * without the parent's other files or its mmap() maps. Only available on the
+ * VM kernel.
+ *
+ * Returns the child's process ID to the parent and 0 to the child, or -1 if
+ * an error occurred. The child can be joined like one created by exec().
+ */
+int fork(void);
+
 /**
  * Suspend execution of the current process until the child process specified
  * by the processID argument has exited. If the child has already exited by the
@@ -206,6 +235,139 @@ int read(int fileDescriptor, void *buffer, int count);
  */
 int write(int fileDescriptor, void *buffer, int count);
 
+/**
+ * A buffer for readv() and writev().
+ */
+struct iovec {
+    void *iov_base;
+    int iov_len;
+};
+
+/**
+ * Read into the iovcnt buffers described by iov, in order, as if by one read()
+ * per buffer but in a single system call. Filling stops at the first buffer
+ * that is not filled completely. iovcnt may be at most 64.
+ *
+ * Returns the total number of bytes read, or -1 if an error occurred before
+ * any bytes were read.
+ */
+int readv(int fileDescriptor, struct iovec *iov, int iovcnt);
+
+/**
+ * Write the iovcnt buffers described by iov, in order, as if by one write()
+ * per buffer but in a single system call. iovcnt may be at most 64.
+ *
+ * Returns the total number of bytes written, or -1 if an error occurred before
+ * any bytes were written.
+ */
+int writev(int fileDescriptor, struct iovec *iov, int iovcnt);
+
+/* SUBMISSION RING SYSCALLS: ring_setup, ring_enter */
+
+/**
+ * A submission ring entry: a system call number, its arguments, and a value
+ * copied to the completion entry. Allowed calls are creat, open, read, write,
+ * close, unlink, readv, writev and, with the file system, stat.
+ */
+struct ring_sqe {
+    int syscall;
+    int args[4];
+    int user_data;
+};
+
+/**
+ * A completion ring entry: the user_data of the submission and its result.
+ */
+struct ring_cqe {
+    int user_data;
+    int result;
+};
+
+/**
+ * The head and tail counters only increase; an entry's slot is its counter
+ * modulo entries. The process advances sq_tail and cq_head, the kernel
+ * advances sq_head and cq_tail. The submission entries follow the header,
+ * then the completion entries.
+ */
+struct ring_header {
+    int sq_head, sq_tail;
+    int cq_head, cq_tail;
+    int entries;
+    int reserved[3];
+};
+
+/**
+ * Set up submission and completion rings of the given number of entries (a
+ * power of two, at most 64) at ring, which must be word aligned and hold
+ * 32 + 32 * entries bytes. Operations submitted through the rings run in
+ * order, while the process keeps running. A process has at most one pair of
+ * rings, and a child made by fork() does not inherit them.
+ *
+ * Returns 0 on success, or -1 if an error occurred.
+ */
+int ring_setup(void *ring, int entries);
+
+/**
+ * Submit up to toSubmit entries between sq_head and sq_tail, then wait until
+ * at least minComplete completions are between cq_head and cq_tail.
+ *
+ * Returns the number of entries submitted, or -1 if an error occurred.
+ */
+int ring_enter(int toSubmit, int minComplete);
+
+/* ASYNCHRONOUS I/O SYSCALLS: aio_read, aio_write, aio_poll, aio_wait */
+
+/**
+ * Start reading up to count bytes from fileDescriptor into buffer, as read()
+ * would, and return without waiting. The buffer must not be touched until the
+ * request finishes. A process may have at most 16 requests outstanding,
+ * counting finished ones not yet collected by aio_poll() or aio_wait().
+ *
+ * Returns a handle for the request, or -1 if an error occurred.
+ */
+int aio_read(int fileDescriptor, void *buffer, int count);
+
+/**
+ * Start writing count bytes from buffer to fileDescriptor, as write() would,
+ * and return without waiting.
+ *
+ * Returns a handle for the request, or -1 if an error occurred.
+ */
+int aio_write(int fileDescriptor, void *buffer, int count);
+
+/**
+ * Check whether the request with the given handle has finished. If it has,
+ * the value read() or write() would have returned is stored in *result and the
+ * handle is freed.
+ *
+ * Returns 1 if the request has finished, 0 if it is still running, or -1 if
+ * there is no such request.
+ */
+int aio_poll(int handle, int *result);
+
+/**
+ * Wait for the request with the given handle to finish, and free the handle.
+ *
+ * Returns the value read() or write() would have returned, or -1 if there is
+ * no such request.
+ */
+int aio_wait(int handle);
+
+/**
+ * Create a pipe: fds[0] receives a file descriptor for reading from it and
+ * fds[1] one for writing to it. A pipe buffers up to 4096 bytes in the kernel.
+ * read() waits for data, and returns 0 once every write end is closed and the
+ * pipe is empty. write() waits for room, and fails once every read end is
+ * closed.
+ *
+ * Children made by exec() or fork() get their own ends of the parent's pipes
+ * under the same descriptors, so a pipe at descriptor 0 or 1 becomes the
+ * child's standard input or output.
+ *
+ * Returns 0 on success, or -1 if an error occurred.
+ */
+int pipe(int fds[2]);
+
 /**
  * Close a file descriptor, so that it no longer refers to any file or stream
  * and may be reused.
@@ -243,8 +405,13 @@ int unlink(char *name);
  * Map the file referenced by fileDescriptor into memory at address. The file
  * may be as large as 0x7FFFFFFF bytes.
  * 
+ * address must be page aligned and the map must not overlap the program or
+ * another map. Pages are read from the file the first time they are touched,
+ * and processes that map the same file share them.
+ *
  * To maintain consistency, further calls to read() and write() on this file
- * descriptor will fail (returning -1) until the file descriptor is closed.
+ * descriptor will fail (returning -1) until the file descriptor is closed or
+ * the map is removed with munmap().
  *
  * When the file descriptor is closed, all remaining dirty pages of the map
  * will be flushed to disk and the map will be removed.
@@ -253,6 +420,52 @@ int unlink(char *name);
  */
 int mmap(int fileDescriptor, char *address);
 
+/**
+ * Remove the map created by mmap() at address, writing back dirty pages that
+ * no other process maps. Reads and writes through the file descriptor work
+ * again afterwards.
+ *
+ * Returns 0 on success, or -1 if no map starts at address.
+ */
+int munmap(char *address);
+
+/* SHARED MEMORY SYSCALLS: shmget, shmat, shmdt, shmrm */
+
+/**
+ * Return the id of the shared memory segment with the given key, creating a
+ * zero-filled segment of at least size bytes if there is none. A segment can
+ * hold at most 64 pages.
+ *
+ * Returns the segment id, or -1 if size is invalid or larger than an existing
+ * segment with that key.
+ */
+int shmget(int key, int size);
+
+/**
+ * Attach shared memory segment id at address, which must be page aligned and
+ * must not overlap the program or another map. Every process attaching the
+ * segment sees the same memory.
+ *
+ * Returns address on success, or -1 if an error occurred.
+ */
+int shmat(int id, char *address);
+
+/**
+ * Detach the shared memory segment attached at address. The segment keeps its
+ * contents until it is removed, even with nobody attached.
+ *
+ * Returns 0 on success, or -1 if no segment is attached at address.
+ */
+int shmdt(char *address);
+
+/**
+ * Remove shared memory segment id. No process can attach it afterwards, and it
+ * is freed once the last process detaches.
+ *
+ * Returns 0 on success, or -1 if there is no such segment.
+ */
+int shmrm(int id);
+
 /* NETWORK SYSCALLS: connect, accept */
 
 /**